@@ -0,0 +1,177 @@
+package example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The syntax tree Parser builds, kept in parallel int arrays instead of one object per
+// node. A node is an index; its children are a linked list through firstChild and
+// nextSibling, in source order. Values (names, literals, operators, error messages)
+// go through a string table, so the tree costs six ints per node plus its distinct
+// strings. INTEGER and DECIMAL literals also keep the FixedPoint value their token
+// carried, in a long column made when the first one is added. Node 0 is the PROGRAM root.
+final class Ast {
+    static final int PROGRAM = 0;
+    static final int BLOCK = 1;
+    static final int DECLARATION = 2;
+    static final int LOOP = 3;
+    static final int IF = 4;
+    static final int READ = 5;
+    static final int WRITE = 6;
+    static final int END = 7;
+    static final int OUTPUT = 8;
+    static final int INPUT = 9;
+    static final int ASSIGN = 10;
+    static final int BINARY = 11;
+    static final int UNARY = 12;
+    static final int NAME = 13;
+    static final int INTEGER = 14;
+    static final int DECIMAL = 15;
+    static final int CHARACTER = 16;
+    static final int BOOLEAN = 17;
+    static final int STRING = 18;
+    static final int ERROR = 19;
+
+    static final int NONE = -1;
+
+    private int[] kinds = new int[64];
+    private int[] values = new int[64];
+    private int[] offsets = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] lastChild = new int[64];
+    private int[] nextSibling = new int[64];
+    private long[] numbers;
+    private int size;
+    private String[] strings = new String[16];
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private int errors;
+
+    // A childless node; value may be null, offset -1 when unknown.
+    int node(int kind, String value, int offset) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+        }
+        int node = size++;
+        kinds[node] = kind;
+        values[node] = intern(value);
+        offsets[node] = offset;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        nextSibling[node] = NONE;
+        if (kind == ERROR) errors++;
+        return node;
+    }
+
+    // An INTEGER or DECIMAL leaf; fixed is its Token.getFixed().
+    int number(int kind, String value, long fixed, int offset) {
+        int node = node(kind, value, offset);
+        if (numbers == null || numbers.length < kinds.length) {
+            int from = numbers == null ? 0 : numbers.length;
+            numbers = numbers == null ? new long[kinds.length] : Arrays.copyOf(numbers, kinds.length);
+            Arrays.fill(numbers, from, numbers.length, FixedPoint.OVERFLOW);
+        }
+        numbers[node] = fixed;
+        return node;
+    }
+
+    // Makes child the last child of parent.
+    void append(int parent, int child) {
+        if (lastChild[parent] == NONE) {
+            firstChild[parent] = child;
+        } else {
+            nextSibling[lastChild[parent]] = child;
+        }
+        lastChild[parent] = child;
+    }
+
+    int size() { return size; }
+    int errors() { return errors; }
+    int kind(int node) { return kinds[node]; }
+    String value(int node) { return values[node] == NONE ? null : strings[values[node]]; }
+    int offset(int node) { return offsets[node]; }
+    // A literal's FixedPoint value, negative when it did not fit one or for any other node.
+    long fixed(int node) { return numbers == null || node >= numbers.length ? FixedPoint.OVERFLOW : numbers[node]; }
+    int firstChild(int node) { return firstChild[node]; }
+    int nextSibling(int node) { return nextSibling[node]; }
+
+    int childCount(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) count++;
+        return count;
+    }
+
+    // Visits the tree depth first, parents before children. Iterative, since a long
+    // chain of left-associative operators is as deep as it is long.
+    void walk(Visitor visitor) {
+        if (size == 0) return;
+        int[] path = new int[16];
+        int[] cursor = new int[16];
+        int depth = 0;
+        visitor.visit(PROGRAM, NONE, 0);
+        path[0] = PROGRAM;
+        cursor[0] = firstChild[PROGRAM];
+        while (depth >= 0) {
+            int child = cursor[depth];
+            if (child == NONE) {
+                depth--;
+                continue;
+            }
+            cursor[depth] = nextSibling[child];
+            visitor.visit(child, path[depth], depth + 1);
+            if (++depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                cursor = Arrays.copyOf(cursor, depth * 2);
+            }
+            path[depth] = child;
+            cursor[depth] = firstChild[child];
+        }
+    }
+
+    interface Visitor {
+        void visit(int node, int parent, int depth);
+    }
+
+    static String kindName(int kind) {
+        return switch (kind) {
+            case PROGRAM -> "PROGRAM";
+            case BLOCK -> "BLOCK";
+            case DECLARATION -> "DECLARATION";
+            case LOOP -> "LOOP";
+            case IF -> "IF";
+            case READ -> "READ";
+            case WRITE -> "WRITE";
+            case END -> "END";
+            case OUTPUT -> "OUTPUT";
+            case INPUT -> "INPUT";
+            case ASSIGN -> "ASSIGN";
+            case BINARY -> "BINARY";
+            case UNARY -> "UNARY";
+            case NAME -> "NAME";
+            case INTEGER -> "INTEGER";
+            case DECIMAL -> "DECIMAL";
+            case CHARACTER -> "CHARACTER";
+            case BOOLEAN -> "BOOLEAN";
+            case STRING -> "STRING";
+            case ERROR -> "ERROR";
+            default -> "UNKNOWN";
+        };
+    }
+
+    private int intern(String value) {
+        if (value == null) return NONE;
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = stringIds.size();
+            if (id == strings.length) strings = Arrays.copyOf(strings, id * 2);
+            strings[id] = value;
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+}
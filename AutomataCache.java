@@ -0,0 +1,88 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+// Minimized automata kept on disk between runs, one file per token type and shape,
+// named after a 64-bit hash of the shape. A file holds the full shape too, so hash
+// collisions read as misses. The files live in a CacheDirectory, which bounds its size
+// and shares safely between threads and processes. Failures of any kind only ever make
+// a lookup miss.
+final class AutomataCache {
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x53414446;
+    private static final int VERSION = 1;
+
+    private final CacheDirectory files;
+
+    AutomataCache(Path dir, long maxBytes) throws IOException {
+        this.files = new CacheDirectory(dir, ".dfa", maxBytes);
+    }
+
+    AutomataVisualizer.Automaton load(int type, String shape) {
+        try {
+            byte[] data = files.read(name(type, shape));
+            if (data == null) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != type || !shape.equals(readChars(in))) {
+                return null;
+            }
+            char[] alphabet = readChars(in).toCharArray();
+            Dfa dfa = Dfa.read(in);
+            if (dfa.symbols() != alphabet.length) {
+                return null;
+            }
+            return new AutomataVisualizer.Automaton(alphabet, dfa);
+        } catch (IOException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    void store(int type, String shape, AutomataVisualizer.Automaton automaton) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(type);
+            writeChars(out, shape);
+            writeChars(out, new String(automaton.alphabet));
+            automaton.dfa.write(out);
+            out.flush();
+            files.write(name(type, shape), buffer.toByteArray());
+        } catch (IOException e) {
+            // Not cached this time; the automaton is built again next run.
+        }
+    }
+
+    private static String name(int type, String shape) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < shape.length(); i++) {
+            hash = (hash ^ shape.charAt(i)) * 0x100000001b3L;
+        }
+        return type + "-" + String.format("%016x", hash);
+    }
+
+    private static void writeChars(DataOutputStream out, String text) throws IOException {
+        out.writeInt(text.length());
+        out.writeChars(text);
+    }
+
+    private static String readChars(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || (long) length * Character.BYTES > in.remaining()) {
+            throw new IOException("Corrupt string length");
+        }
+        char[] chars = new char[length];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + length * Character.BYTES);
+        return new String(chars);
+    }
+}
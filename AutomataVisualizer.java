@@ -1,174 +1,145 @@
 package example;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class AutomataVisualizer {
     private static final String ARROW = "→";
-    private static final String VERTICAL = "│";
-    private static final String HORIZONTAL = "──";
+    static final String VERTICAL = "│";
+    static final String HORIZONTAL = "──";
     private static final String CORNER = "└";
     private static final String EPSILON = "ε";
 
-    static class DFAState {
-        Set<State> nfaStates;
-        int id;
-        Map<Character, DFAState> transitions;
-        boolean isFinal;
-
-        DFAState(Set<State> nfaStates, int id) {
-            this.nfaStates = nfaStates;
-            this.id = id;
-            this.transitions = new HashMap<>();
-            this.isFinal = nfaStates.stream().anyMatch(s -> s.isFinal);
-        }
-    }
-
-    public static void visualizeAutomata(Token token) {
-        if (token.getStatePath().isEmpty()) return;
-
-        System.out.println("\n=== Token: " + token.getValue() + " (" + getTokenTypeName(token.getType()) + ") ===\n");
+    // Minimized DFAs by canonical token shape, shared by every unit in a batch. Shapes
+    // that embed literal text (strings mostly) are unbounded, so the cache stops
+    // growing at CACHE_LIMIT and later shapes are simply built each time.
+    private static final int CACHE_LIMIT = 4096;
+    private static final Map<String, Automaton> CACHE = new ConcurrentHashMap<>();
 
-        Map<Integer, State> nfaStates = new HashMap<>();
-        Map<Integer, Map<Character, Set<Integer>>> nfaTransitions = new HashMap<>();
-        Map<Integer, String> stateValues = new HashMap<>();
+    static void clearCache() {
+        CACHE.clear();
+    }
 
-        for (int i = 0; i < token.getStatePath().size(); i++) {
-            State state = token.getStatePath().get(i);
-            nfaStates.put(state.id, state);
+    // Receives the NFA transitions of one state.
+    interface Edge {
+        void accept(char symbol, int target);
+    }
 
-            if (i < token.getValue().length()) {
-                stateValues.put(state.id, String.valueOf(token.getValue().charAt(i)));
-            } else {
-                stateValues.put(state.id, "");
-            }
-        }
+    // Consecutive states are joined by ε; character literals also link their states by
+    // the next symbol. Transitions come in symbol order, ε being the blank.
+    static void nfaEdges(StateTrace trace, int state, Edge edge) {
+        if (state + 1 >= trace.size()) return;
+        int target = trace.stateId(state + 1);
+        char symbol = trace.symbol(state + 1);
+        boolean linked = trace.isLinked() && state >= 1 && symbol != ' ';
+        if (linked && symbol < ' ') edge.accept(symbol, target);
+        edge.accept(' ', target);
+        if (linked && symbol > ' ') edge.accept(symbol, target);
+    }
 
-        for (int i = 0; i < token.getStatePath().size(); i++) {
-            State state = token.getStatePath().get(i);
-            Map<Character, Set<Integer>> stateTransitions = new HashMap<>();
-            nfaTransitions.put(state.id, stateTransitions);
+    static String label(char symbol) {
+        return symbol == ' ' ? EPSILON : symbol == '\n' ? "\\n" : String.valueOf(symbol);
+    }
 
-            for (Map.Entry<Character, Set<State>> transition : state.transitions.entrySet()) {
-                Set<Integer> targetStates = new HashSet<>();
-                for (State target : transition.getValue()) {
-                    targetStates.add(target.id);
-                }
-                stateTransitions.put(transition.getKey(), targetStates);
+    // disk, if not null, is consulted when a shape is not in memory yet, so automata
+    // survive the run.
+    static Automaton automaton(int type, StateTrace trace, AutomataCache disk) {
+        String key = (trace.isLinked() ? "L" : "-") + trace.pattern();
+        Automaton automaton = CACHE.get(key);
+        CompileStats stats = CompileStats.current();
+        if (automaton == null) {
+            automaton = disk == null ? null : disk.load(type, key);
+            if (automaton == null) {
+                automaton = constructDFA(trace);
+                if (stats != null) stats.automatonBuilt(automaton.dfa);
+                if (disk != null) disk.store(type, key, automaton);
+            } else if (stats != null) {
+                stats.automatonHit();
             }
-
-            if (i < token.getStatePath().size() - 1) {
-                Set<Integer> epsilonTargets = stateTransitions.computeIfAbsent(' ', k -> new HashSet<>());
-                epsilonTargets.add(token.getStatePath().get(i + 1).id);
+            if (CACHE.size() < CACHE_LIMIT) {
+                CACHE.putIfAbsent(key, automaton);
             }
+        } else if (stats != null) {
+            stats.automatonHit();
         }
+        return automaton;
+    }
 
-        System.out.println("NFA States and Transitions:");
-        System.out.println("─".repeat(50));
-        
-        List<Integer> sortedStateIds = new ArrayList<>(nfaStates.keySet());
-        Collections.sort(sortedStateIds);
-        
-        for (Integer stateId : sortedStateIds) {
-            State state = nfaStates.get(stateId);
-            String stateValue = stateValues.get(stateId);
-            System.out.printf("q%d [%s]%s\n", 
-                stateId, 
-                stateValue.isEmpty() ? "-" : stateValue,
-                state.isFinal ? " (Final)" : "");
-            
-            Map<Character, Set<Integer>> transitions = nfaTransitions.get(stateId);
-            if (transitions != null && !transitions.isEmpty()) {
-                List<Map.Entry<Character, Set<Integer>>> sortedTransitions = 
-                    new ArrayList<>(transitions.entrySet());
-                sortedTransitions.sort(Map.Entry.comparingByKey());
-                
-                for (Map.Entry<Character, Set<Integer>> transition : sortedTransitions) {
-                    String symbol = transition.getKey() == ' ' ? EPSILON : 
-                                  transition.getKey() == '\n' ? "\\n" : 
-                                  String.valueOf(transition.getKey());
-                    
-                    List<Integer> sortedTargets = new ArrayList<>(transition.getValue());
-                    Collections.sort(sortedTargets);
-                    
-                    for (Integer targetId : sortedTargets) {
-                        System.out.printf("%s%s -%s→ q%d\n", 
-                            VERTICAL, HORIZONTAL, symbol, targetId);
-                    }
-                }
-            }
+    // The NFA reads the path's symbols in order from an extra start state and accepts
+    // where the path ends. Blanks and placeholder symbols are ε-moves. Subset
+    // construction and Hopcroft minimization are Dfa's.
+    private static Automaton constructDFA(StateTrace trace) {
+        int size = trace.size();
+        char[] alphabet = new char[size];
+        int symbols = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isEpsilon(trace.symbol(i))) alphabet[symbols++] = trace.symbol(i);
+        }
+        Arrays.sort(alphabet, 0, symbols);
+        int distinct = 0;
+        for (int i = 0; i < symbols; i++) {
+            if (distinct == 0 || alphabet[distinct - 1] != alphabet[i]) alphabet[distinct++] = alphabet[i];
         }
+        alphabet = Arrays.copyOf(alphabet, distinct);
 
-        DFAState initial = constructDFA(token.getStatePath());
-        
-        System.out.println("\nDFA States and Transitions:");
-        System.out.println("─".repeat(50));
-        
-        Set<DFAState> visited = new HashSet<>();
-        Queue<DFAState> queue = new LinkedList<>();
-        queue.offer(initial);
-        
-        while (!queue.isEmpty()) {
-            DFAState current = queue.poll();
-            
-            if (!visited.add(current)) continue;
-            
-            System.out.printf("D%d%s\n", current.id, current.isFinal ? " (Final)" : "");
-            
-            List<Map.Entry<Character, DFAState>> sortedTransitions = 
-                new ArrayList<>(current.transitions.entrySet());
-            sortedTransitions.sort(Map.Entry.comparingByKey());
-            
-            for (Map.Entry<Character, DFAState> transition : sortedTransitions) {
-                String symbol = transition.getKey() == ' ' ? EPSILON : 
-                              transition.getKey() == '\n' ? "\\n" : 
-                              String.valueOf(transition.getKey());
-                              
-                System.out.printf("%s%s -%s→ D%d\n", 
-                    VERTICAL, HORIZONTAL, symbol, transition.getValue().id);
-                    
-                queue.offer(transition.getValue());
+        Nfa nfa = new Nfa(distinct);
+        for (int i = 0; i <= size; i++) {
+            nfa.addState();
+        }
+        for (int i = 0; i < size; i++) {
+            nfaEdge(nfa, alphabet, i, trace.symbol(i), i + 1);
+        }
+        if (trace.isLinked()) {
+            for (int i = 1; i + 1 < size; i++) {
+                nfaEdge(nfa, alphabet, i + 1, trace.symbol(i + 1), i + 2);
             }
         }
-    }
+        nfa.setAccept(size, 1, 0);
 
-    private static DFAState constructDFA(List<State> nfaPath) {
-        Map<Set<State>, DFAState> dfaStates = new HashMap<>();
-        int dfaStateCounter = 0;
-
-        Set<State> currentStates = new HashSet<>();
-        // currentStates.add(nfaPath.get(0));
-
-        DFAState initialDFA = new DFAState(currentStates, dfaStateCounter++);
-        dfaStates.put(currentStates, initialDFA);
+        return new Automaton(alphabet, Dfa.fromNfa(nfa, 0).minimize());
+    }
 
-        for (int i = 0; i < nfaPath.size(); i++) {
-            State current = nfaPath.get(i);
+    private static void nfaEdge(Nfa nfa, char[] alphabet, int from, char symbol, int to) {
+        if (isEpsilon(symbol)) {
+            nfa.addEpsilon(from, to);
+        } else {
+            nfa.addEdge(from, Arrays.binarySearch(alphabet, symbol), to);
+        }
+    }
 
-            char transitionChar = current.transitionChar;
-            if (transitionChar != 'ε' && transitionChar != '?' && transitionChar != ' ') {
-                Set<State> nextStates = new HashSet<>();
-                nextStates.add(current);
+    private static boolean isEpsilon(char symbol) {
+        return symbol == ' ' || symbol == 'ε' || symbol == '?';
+    }
 
-                DFAState currentDFA = dfaStates.get(currentStates);
-                DFAState nextDFA = dfaStates.get(nextStates);
-                
-                if (nextDFA == null) {
-                    nextDFA = new DFAState(nextStates, dfaStateCounter++);
-                    dfaStates.put(nextStates, nextDFA);
+    // A minimized DFA over the symbols of one token shape, and its rendering. Minimize
+    // numbers states breadth-first from the start, so listing them in order reads the
+    // same as walking the automaton.
+    static final class Automaton {
+        final char[] alphabet;
+        final Dfa dfa;
+        final String text;
+
+        Automaton(char[] alphabet, Dfa dfa) {
+            this.alphabet = alphabet;
+            this.dfa = dfa;
+            StringBuilder out = new StringBuilder();
+            for (int state = 0; state < dfa.size(); state++) {
+                out.append('D').append(state).append(dfa.accept(state) != Nfa.NO_KIND ? " (Final)" : "").append('\n');
+                for (int symbol = 0; symbol < alphabet.length; symbol++) {
+                    int target = dfa.next(state, symbol);
+                    if (target != Dfa.DEAD) {
+                        out.append(VERTICAL).append(HORIZONTAL).append(" -").append(label(alphabet[symbol]))
+                            .append("→ D").append(target).append('\n');
+                    }
                 }
-
-                currentDFA.transitions.put(transitionChar, nextDFA);
-                currentStates = nextStates;
             }
+            this.text = out.toString();
         }
-        
-        return initialDFA;
     }
-    
-
-    public static void displayAllAutomata(List<Token> tokens) {
-        System.out.println("\n=== Complete Lexical Analysis Automata ===\n");
 
+    // Calls action for the first token of every type and state pattern, skipping EOF.
+    public static void forEachDistinct(List<Token> tokens, Consumer<Token> action) {
         Map<Integer, Set<String>> processedPatterns = new HashMap<>();
         
         for (Token token : tokens) {
@@ -179,19 +150,31 @@ public class AutomataVisualizer {
                 token.getType(), k -> new HashSet<>());
                 
             if (patterns.add(pattern)) {
-                visualizeAutomata(token);
+                action.accept(token);
+            }
+        }
+    }
+
+    // Same walk over the buffer's columns; a Token is only built for the distinct ones.
+    public static void forEachDistinct(TokenBuffer tokens, Consumer<Token> action) {
+        Map<Integer, Set<String>> processedPatterns = new HashMap<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            int type = tokens.type(i);
+            if (type == Token.EOF) continue;
+
+            Set<String> patterns = processedPatterns.computeIfAbsent(type, k -> new HashSet<>());
+            if (patterns.add(tokens.pattern(i))) {
+                action.accept(tokens.get(i));
             }
         }
     }
 
     private static String getTokenPattern(Token token) {
-        return token.getStatePath().stream()
-            .map(s -> String.valueOf(s.transitionChar))
-            .collect(StringBuilder::new, StringBuilder::append, StringBuilder::append)
-            .toString();
+        return token.getTrace() == null ? "" : token.getTrace().pattern();
     }
 
-    private static String getTokenTypeName(int type) {
+    static String getTokenTypeName(int type) {
         return switch (type) {
             case Token.KEYWORD -> "KEYWORD";
             case Token.DATATYPE -> "DATATYPE";
@@ -205,6 +188,7 @@ public class AutomataVisualizer {
             case Token.PUNCTUATOR -> "PUNCTUATOR";
             case Token.INPUT -> "INPUT";
             case Token.OUTPUT -> "OUTPUT";
+            case Token.ERROR -> "ERROR";
             default -> "UNKNOWN";
         };
     }
@@ -0,0 +1,245 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compiles many .sa files in one JVM. Every file is its own task, on a virtual thread
+// where the JDK has them, with at most `jobs` running at once. Each task reports into a
+// buffer of its own, so reports never interleave. They are written to out in input
+// order, or to one file per unit under the output directory.
+final class BatchCompiler {
+    static final int DEFAULT_JOBS = Runtime.getRuntime().availableProcessors();
+
+    private final Lexer.Engine engine;
+    private final Lexer.Trace trace;
+    private final int jobs;
+    private final Path outDir;
+    private final ReportSink.Format format;
+    private final Set<ReportSink.Section> sections;
+    private final boolean stats;
+    private final boolean recover;
+    private final boolean stream;
+    private final boolean mmap;
+    private final boolean parallel;
+    private final TokenBuffer.Storage buffer;
+    private final AutomataCache automataCache;
+    private final BuildCache buildCache;
+
+    // Every unit is read and lexed as main does for one file with the same options.
+    // buffer and either cache may be null.
+    BatchCompiler(Lexer.Engine engine, Lexer.Trace trace, int jobs, Path outDir,
+                  ReportSink.Format format, Set<ReportSink.Section> sections, boolean stats,
+                  boolean recover, boolean stream, boolean mmap, boolean parallel,
+                  TokenBuffer.Storage buffer, AutomataCache automataCache, BuildCache buildCache) {
+        this.engine = engine;
+        this.trace = trace;
+        this.jobs = Math.max(1, jobs);
+        this.outDir = outDir;
+        this.format = format;
+        this.sections = sections;
+        this.stats = stats;
+        this.recover = recover;
+        this.stream = stream;
+        this.mmap = mmap;
+        this.parallel = parallel;
+        this.buffer = buffer;
+        this.automataCache = automataCache;
+        this.buildCache = buildCache;
+    }
+
+    // Reports to out, errors and stats to err. Relative inputs are taken from cwd.
+    // Returns the number of inputs that failed.
+    public int run(List<String> inputs, Path cwd, PrintStream out, PrintStream err) {
+        long started = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        int errors = 0;
+        for (String input : inputs) {
+            try {
+                collect(input, cwd, files);
+            } catch (IOException | UncheckedIOException e) {
+                err.println(input + ": Error reading input: " + e.getMessage());
+                errors++;
+            }
+        }
+
+        Semaphore slots = new Semaphore(jobs);
+        ExecutorService executor = newExecutor();
+        long tokens = 0;
+        try {
+            List<Future<Unit>> units = new ArrayList<>(files.size());
+            for (Path file : files) {
+                units.add(executor.submit(() -> compile(file, cwd, slots)));
+            }
+            for (Future<Unit> future : units) {
+                Unit unit = future.get();
+                if (unit.output != null) {
+                    out.println("==> " + unit.file + " <==");
+                    out.write(unit.output, 0, unit.output.length);
+                    out.println();
+                }
+                if (unit.error != null) {
+                    err.println(unit.file + ": " + unit.error);
+                    errors++;
+                } else if (unit.diagnostics != null && !unit.diagnostics.isEmpty()) {
+                    unit.diagnostics.print(unit.file.toString(), err);
+                    errors++;
+                }
+                if (stats) {
+                    unit.stats.print(err);
+                }
+                tokens += unit.tokens;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch compilation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch compilation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        out.println("─".repeat(40));
+        out.println("Files: " + files.size() + ", Tokens: " + tokens + ", Errors: " + errors
+            + ", Wall time: " + millis + " ms");
+        return errors;
+    }
+
+    // Virtual threads when the runtime has them (JDK 21+), platform threads otherwise.
+    private ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(jobs);
+        }
+    }
+
+    private Unit compile(Path file, Path cwd, Semaphore slots) throws IOException {
+        slots.acquireUninterruptibly();
+        try {
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            int tokens = 0;
+            String error = null;
+            Path path = cwd.resolve(file);
+            CompileStats unitStats = new CompileStats(file.toString());
+            Diagnostics diagnostics = recover ? new Diagnostics() : null;
+            try (ReportSink sink = ReportSink.open(format, sections, report).diskCache(automataCache)) {
+                if (!file.toString().endsWith(".sa")) {
+                    error = "Error: File must have a .sa extension";
+                } else if (stream) {
+                    main.streamFile(path, trace, sink, unitStats, diagnostics, null);
+                    tokens = (int) unitStats.tokens;
+                } else {
+                    unitStats.begin(CompileStats.Phase.READ);
+                    CharSequence source = mmap ? MappedSource.open(path) : main.readFile(path.toString());
+                    unitStats.bytes = Files.size(path);
+                    unitStats.end();
+                    tokens = main.compile(source, engine, trace, parallel, buffer, sink, unitStats, diagnostics,
+                        buildCache, null);
+                }
+            } catch (IOException e) {
+                error = "Error reading file: " + e.getMessage();
+            } catch (UncheckedIOException e) {
+                error = "Error reading file: " + e.getCause().getMessage();
+            } catch (RuntimeException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+
+            byte[] output = report.toByteArray();
+            if (outDir != null) {
+                Path target = outDir.resolve(outputName(path, cwd));
+                Files.createDirectories(target.getParent());
+                Files.write(target, output);
+                output = null;
+            }
+            return new Unit(file, output, tokens, error, unitStats, diagnostics);
+        } finally {
+            slots.release();
+        }
+    }
+
+    // Mirrors the input path under the output directory.
+    private static String outputName(Path file, Path cwd) {
+        Path absolute = file.toAbsolutePath().normalize();
+        cwd = cwd.toAbsolutePath().normalize();
+        Path relative = absolute.startsWith(cwd) ? cwd.relativize(absolute) : absolute.getRoot().relativize(absolute);
+        return relative + ".out";
+    }
+
+    // Inputs are files, directories (searched for .sa files), globs such as src/**/*.sa,
+    // or @list files naming one input per line. Files keep the form they were given in,
+    // relative ones being taken from cwd.
+    private static void collect(String input, Path cwd, List<Path> files) throws IOException {
+        if (input.startsWith("@")) {
+            for (String line : Files.readAllLines(cwd.resolve(input.substring(1)))) {
+                if (!line.isBlank()) collect(line.trim(), cwd, files);
+            }
+            return;
+        }
+        int glob = firstGlobChar(input);
+        if (glob >= 0) {
+            int slash = input.lastIndexOf('/', glob);
+            Path base = Path.of(slash < 0 ? "" : input.substring(0, slash + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+            files.addAll(walk(base, cwd, matcher::matches));
+            return;
+        }
+        Path path = Path.of(input);
+        if (Files.isDirectory(cwd.resolve(path))) {
+            files.addAll(walk(path, cwd, file -> file.toString().endsWith(".sa")));
+        } else {
+            files.add(path);
+        }
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+
+    // The files under base, named as base is, that pass filter.
+    private static List<Path> walk(Path base, Path cwd, Predicate<Path> filter) throws IOException {
+        Path root = cwd.resolve(base);
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).map(file -> base.resolve(root.relativize(file)))
+                .filter(filter).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static final class Unit {
+        final Path file;
+        final byte[] output;
+        final int tokens;
+        final String error;
+        final CompileStats stats;
+        final Diagnostics diagnostics;
+
+        Unit(Path file, byte[] output, int tokens, String error, CompileStats stats, Diagnostics diagnostics) {
+            this.file = file;
+            this.output = output;
+            this.tokens = tokens;
+            this.error = error;
+            this.stats = stats;
+            this.diagnostics = diagnostics;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lexing results kept on disk between builds, keyed by a SHA-256 of the source text,
+// Lexer.VERSION and the options that change the tokens (tracing, recovery). A unit whose
+// key is present gets its tokens, symbol table and diagnostics back without running the
+// Lexer. Entries live in a CacheDirectory, so writes are atomic and the directory is
+// bounded, least recently used first. Failures of any kind only ever make a lookup miss.
+//
+// Entry layout, all counts and numbers unsigned varints:
+//   magic, format version, lexer version (ints), key (32 bytes)
+//   strings:      count, then length + UTF-8 bytes each
+//   tokens:       count, then per token: type + 1 (0 for a null token), offset + 1,
+//                 value, scope, for INTEGER and DECIMAL its FixedPoint value + 1 (0
+//                 for none, a long varint), path length + 1 (0 for none); with a path
+//                 its first state id, flags (1 final, 2 linked) and one char per state
+//   symbols:      count, then name, type, scope, value, occurrences
+//   diagnostics:  count, then line, column, offset, kind, message
+// Strings are referenced by their index in the string table plus one; 0 stands for null.
+final class BuildCache {
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final int MAGIC = 0x5341424c;
+    private static final int VERSION = 3;
+    private static final int FINAL = 1;
+    private static final int LINKED = 2;
+
+    private final CacheDirectory files;
+
+    BuildCache(Path dir, long maxBytes) throws IOException {
+        this.files = new CacheDirectory(dir, ".lex", maxBytes);
+    }
+
+    // What a unit's lexing produced, as stored.
+    static final class Unit {
+        final List<Token> tokens;
+        final List<SymbolTableEntry> symbols;
+        final List<Diagnostic> diagnostics;
+
+        Unit(List<Token> tokens, List<SymbolTableEntry> symbols, List<Diagnostic> diagnostics) {
+            this.tokens = tokens;
+            this.symbols = symbols;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    static byte[] key(CharSequence source, Lexer.Trace trace, boolean recover) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(3 * Integer.BYTES)
+                .putInt(Lexer.VERSION).putInt(trace.ordinal()).putInt(recover ? 1 : 0).flip());
+            digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    Unit load(byte[] key) {
+        try {
+            byte[] data = files.read(name(key));
+            if (data == null) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != Lexer.VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[key.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, key)) {
+                return null;
+            }
+            String[] strings = new String[count(in)];
+            for (int i = 0; i < strings.length; i++) {
+                int length = count(in);
+                strings[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+
+            int count = count(in);
+            List<Token> tokens = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int type = readVarint(in) - 1;
+                if (type < 0) {
+                    tokens.add(null);
+                    continue;
+                }
+                int offset = readVarint(in) - 1;
+                String value = string(strings, readVarint(in));
+                String scope = string(strings, readVarint(in));
+                long fixed = isNumber(type) ? readLongVarint(in) - 1 : FixedPoint.OVERFLOW;
+                int states = readVarint(in) - 1;
+                StateTrace trace = null;
+                if (states >= 0) {
+                    int first = readVarint(in);
+                    int flags = readVarint(in);
+                    char[] symbols = new char[states];
+                    for (int s = 0; s < states; s++) symbols[s] = (char) readVarint(in);
+                    trace = new StateTrace(first, symbols, (flags & FINAL) != 0, (flags & LINKED) != 0);
+                }
+                Token token = new Token(type, value, trace, scope, offset);
+                token.setFixed(fixed);
+                tokens.add(token);
+            }
+
+            int entries = count(in);
+            List<SymbolTableEntry> symbols = new ArrayList<>(entries);
+            for (int i = 0; i < entries; i++) {
+                SymbolTableEntry entry = new SymbolTableEntry(string(strings, readVarint(in)), string(strings, readVarint(in)),
+                    string(strings, readVarint(in)), string(strings, readVarint(in)));
+                entry.occurrences = readVarint(in);
+                symbols.add(entry);
+            }
+
+            int reported = count(in);
+            Diagnostic.Kind[] kinds = Diagnostic.Kind.values();
+            List<Diagnostic> diagnostics = new ArrayList<>(reported);
+            for (int i = 0; i < reported; i++) {
+                int line = readVarint(in);
+                int column = readVarint(in);
+                int offset = readVarint(in);
+                int kind = readVarint(in);
+                if (kind >= kinds.length) return null;
+                diagnostics.add(new Diagnostic(line, column, offset, kinds[kind], string(strings, readVarint(in))));
+            }
+            return in.hasRemaining() ? null : new Unit(tokens, symbols, diagnostics);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    void store(byte[] key, List<Token> tokens, List<SymbolTableEntry> symbols, List<Diagnostic> diagnostics) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(tokens.size() * 8 + 64);
+
+        writeVarint(body, tokens.size());
+        for (Token token : tokens) {
+            if (token == null) {
+                writeVarint(body, 0);
+                continue;
+            }
+            writeVarint(body, token.getType() + 1);
+            writeVarint(body, token.getOffset() + 1);
+            writeVarint(body, id(ids, strings, token.getValue()));
+            writeVarint(body, id(ids, strings, token.getScope()));
+            if (isNumber(token.getType())) writeLongVarint(body, Math.max(token.getFixed(), -1) + 1);
+            StateTrace trace = token.getTrace();
+            if (trace == null) {
+                writeVarint(body, 0);
+                continue;
+            }
+            writeVarint(body, trace.size() + 1);
+            if (trace.size() == 0) {
+                writeVarint(body, 0);
+                writeVarint(body, 0);
+                continue;
+            }
+            writeVarint(body, trace.stateId(0));
+            writeVarint(body, (trace.isFinal(trace.size() - 1) ? FINAL : 0) | (trace.isLinked() ? LINKED : 0));
+            for (int s = 0; s < trace.size(); s++) writeVarint(body, trace.symbol(s));
+        }
+
+        writeVarint(body, symbols.size());
+        for (SymbolTableEntry entry : symbols) {
+            writeVarint(body, id(ids, strings, entry.name));
+            writeVarint(body, id(ids, strings, entry.type));
+            writeVarint(body, id(ids, strings, entry.scope));
+            writeVarint(body, id(ids, strings, entry.value));
+            writeVarint(body, entry.occurrences);
+        }
+
+        writeVarint(body, diagnostics.size());
+        for (Diagnostic diagnostic : diagnostics) {
+            writeVarint(body, diagnostic.line);
+            writeVarint(body, diagnostic.column);
+            writeVarint(body, diagnostic.offset);
+            writeVarint(body, diagnostic.kind.ordinal());
+            writeVarint(body, id(ids, strings, diagnostic.message));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + strings.size() * 8 + 64);
+        ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).putInt(MAGIC).putInt(VERSION).putInt(Lexer.VERSION);
+        out.write(header.array(), 0, header.capacity());
+        out.write(key, 0, key.length);
+        writeVarint(out, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.writeBytes(body.toByteArray());
+        try {
+            files.write(name(key), out.toByteArray());
+        } catch (IOException e) {
+            // Not cached this time; the unit is lexed again next build.
+        }
+    }
+
+    private static boolean isNumber(int type) {
+        return type == Token.INTEGER || type == Token.DECIMAL;
+    }
+
+    private static String name(byte[] key) {
+        StringBuilder name = new StringBuilder(key.length * 2);
+        for (byte b : key) name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return name.toString();
+    }
+
+    private static int id(Map<String, Integer> ids, List<String> strings, String string) {
+        if (string == null) {
+            return 0;
+        }
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = strings.size() + 1;
+            ids.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    private static String string(String[] strings, int id) throws IOException {
+        if (id > strings.length) throw new IOException("Corrupt string reference");
+        return id == 0 ? null : strings[id - 1];
+    }
+
+    // A count is never more than the bytes left, which keeps corrupt input from
+    // allocating huge lists.
+    private static int count(ByteBuffer in) throws IOException {
+        int count = readVarint(in);
+        if (count > in.remaining()) throw new IOException("Corrupt count");
+        return count;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeLongVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readLongVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Corrupt varint");
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Corrupt varint");
+    }
+}
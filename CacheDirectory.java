@@ -0,0 +1,136 @@
+package example;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A size-bounded directory of cache files with one suffix. Files are written to a temp
+// file and renamed into place, which lets any number of threads and processes share a
+// directory. Reading a file refreshes its modification time, and once the directory
+// outgrows maxBytes the least recently used files are deleted, along with temp files
+// that writers which died left behind. What the files hold is up to the caches built
+// on this.
+final class CacheDirectory {
+    // Older temp files than this belong to no live writer.
+    private static final long STALE_TEMP_MILLIS = 10 * 60 * 1000;
+
+    private final Path dir;
+    private final String suffix;
+    private final long maxBytes;
+    private final AtomicLong bytes;
+
+    CacheDirectory(Path dir, String suffix, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.suffix = suffix;
+        this.maxBytes = maxBytes;
+        long total = 0;
+        for (Entry entry : entries()) total += entry.size;
+        this.bytes = new AtomicLong(total);
+    }
+
+    // The file's bytes, or null if there is no such file.
+    byte[] read(String name) throws IOException {
+        Path file = dir.resolve(name + suffix);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    void write(String name, byte[] data) throws IOException {
+        Path file = dir.resolve(name + suffix);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        long replaced;
+        try {
+            Files.write(temp, data);
+            replaced = size(file);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (bytes.addAndGet(data.length - replaced) > maxBytes) {
+            evict();
+        }
+    }
+
+    // Drops the least recently used files until the cache is down to 3/4 of its bound.
+    private synchronized void evict() throws IOException {
+        deleteStaleTemps();
+        List<Entry> entries = entries();
+        entries.sort(Comparator.comparingLong(entry -> entry.used));
+        long total = 0;
+        for (Entry entry : entries) total += entry.size;
+        for (Entry entry : entries) {
+            if (total <= maxBytes / 4 * 3) break;
+            Files.deleteIfExists(entry.file);
+            total -= entry.size;
+        }
+        bytes.set(total);
+    }
+
+    private void deleteStaleTemps() throws IOException {
+        long cutoff = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + suffix + "*.tmp")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) Files.deleteIfExists(file);
+                } catch (NoSuchFileException e) {
+                    // Renamed into place or deleted meanwhile.
+                }
+            }
+        }
+    }
+
+    // The size of a cache file, 0 if there is none.
+    private static long size(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private List<Entry> entries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + suffix)) {
+            for (Path file : files) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                } catch (NoSuchFileException e) {
+                    // Evicted by someone else meanwhile.
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static final class Entry {
+        final Path file;
+        final long size;
+        final long used;
+
+        Entry(Path file, long size, long used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// The workload the sa launcher runs once under -XX:ArchiveClassesAtExit (or
+// -XX:AOTCacheOutput) so the archive holds what an ordinary run loads: the command
+// line, both engines, tracing, the token buffer, every report format, --stats, the
+// binary token stream, the parser, the bytecode compiler and the diagnostics path.
+// Files given on the command line are compiled as well.
+final class CdsTraining {
+    private static final String SAMPLE = String.join("\n",
+        "num count = 10;",
+        "dec ratio = 4.47754908 ^ count;",
+        "char grade = 'a';",
+        "bool done = false;",
+        "/* block",
+        "   comment */",
+        "loop (count) {",
+        "    count = count - 1 % 3; // line comment",
+        "    output(count)",
+        "}",
+        "input(name)",
+        "output(\"done\")",
+        "");
+    private static final String BROKEN = "num Bad = 'xy';\n}\noutput(x;\n";
+
+    private CdsTraining() {}
+
+    public static void main(String[] args) throws IOException {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        Path dir = Files.createTempDirectory("sa-training");
+        try {
+            Path sample = Files.writeString(dir.resolve("sample.sa"), SAMPLE);
+            Path broken = Files.writeString(dir.resolve("broken.sa"), BROKEN);
+            for (ReportSink.Format format : ReportSink.Format.values()) {
+                String name = format.name().toLowerCase(Locale.ROOT);
+                main.run(new String[] {"--format", name, "--stats", sample.toString()}, dir, discard, discard);
+                main.run(new String[] {"--table", "--format", name, sample.toString()}, dir, discard, discard);
+            }
+            main.run(new String[] {"--buffer", "--ast", sample.toString()}, dir, discard, discard);
+            main.run(new String[] {"--bytecode", sample.toString()}, dir, discard, discard);
+            main.run(new String[] {"--no-trace", "--stream", sample.toString()}, dir, discard, discard);
+            main.run(new String[] {"--emit-tokens", "sample.sat", sample.toString()}, dir, discard, discard);
+            main.run(new String[] {"sample.sat"}, dir, discard, discard);
+            main.run(new String[] {"--recover", broken.toString()}, dir, discard, discard);
+            try {
+                main.run(new String[] {broken.toString()}, dir, discard, discard);
+            } catch (IllegalArgumentException e) {
+                // strict mode stops at the first error, as it should
+            }
+            for (String file : args) {
+                main.run(new String[] {file}, Path.of(""), discard, discard);
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.collect(Collectors.toList())) Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format for ProgramJit: a constant pool with
+// deduplicated entries, methods with a Code attribute, optionally an exception table
+// and a StackMapTable, and no fields or class attributes. Constants are added while code is written, so
+// the pool is serialised last.
+final class ClassFileWriter {
+    static final int VERSION = 61;  // Java 17
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int LONG = 5;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    int integer(int value) {
+        return entry("I" + value, out -> {
+            out.writeByte(INTEGER);
+            out.writeInt(value);
+        }, 1);
+    }
+
+    int longConstant(long value) {
+        return entry("J" + value, out -> {
+            out.writeByte(LONG);
+            out.writeLong(value);
+        }, 2);
+    }
+
+    // Classes by internal name, e.g. "java/lang/Object".
+    int classRef(String name) {
+        int nameIndex = utf8(name);
+        return entry("C" + name, out -> {
+            out.writeByte(CLASS);
+            out.writeShort(nameIndex);
+        }, 1);
+    }
+
+    int string(String value) {
+        int valueIndex = utf8(value);
+        return entry("S" + value, out -> {
+            out.writeByte(STRING);
+            out.writeShort(valueIndex);
+        }, 1);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return member(METHOD_REF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return member(INTERFACE_METHOD_REF, owner, name, descriptor);
+    }
+
+    // exceptionTable holds start, end, handler and catch type class index for each
+    // handler, or is null; stackMapTable holds the attribute's body (the entry count and
+    // entries) or is null.
+    void method(int access, String name, String descriptor, int maxStack, int maxLocals,
+                byte[] code, int[] exceptionTable, byte[] stackMapTable) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeName = utf8("Code");
+        int stackMapName = stackMapTable == null ? 0 : utf8("StackMapTable");
+        int[] handlers = exceptionTable == null ? new int[0] : exceptionTable;
+        methods.add(bytes(out -> {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            int attributes = stackMapTable == null ? 0 : 6 + stackMapTable.length;
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2 * handlers.length + 2 + attributes);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(handlers.length / 4);
+            for (int value : handlers) out.writeShort(value);
+            if (stackMapTable == null) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(stackMapName);
+                out.writeInt(stackMapTable.length);
+                out.write(stackMapTable);
+            }
+        }));
+    }
+
+    byte[] toBytes(int access, String name, String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) interfaceIndexes[i] = classRef(interfaces[i]);
+        if (poolCount > 0xffff) throw new IllegalStateException("Constant pool too large");
+        return bytes(out -> {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes) out.writeShort(index);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) out.write(method);
+            out.writeShort(0);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ' ' + descriptor, out -> {
+            out.writeByte(NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return entry("M" + tag + owner + '.' + name + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    // Long constants take two pool slots.
+    private int entry(String key, Body body, int slots) {
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        try {
+            body.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        entries.put(key, index);
+        return index;
+    }
+
+    private static byte[] bytes(Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            body.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,194 @@
+package example;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.FlightRecorder;
+
+// Counters and timings for one compilation unit, phase by phase. Phases run one after
+// another on the unit's thread: begin(phase) ... end(). Each end() commits a JFR
+// CompilerPhase event; --stats prints the summary. While compile runs, the stats are
+// also the thread's current ones, so the automata cache can count hits without being
+// handed them. CPU time is the calling thread's only, so with --parallel the lex phase
+// leaves out what the worker threads spent.
+final class CompileStats {
+    enum Phase { READ, LEX, REPORT, AUTOMATA, SYMBOLS, PARSE }
+
+    private static final ThreadLocal<CompileStats> CURRENT = new ThreadLocal<>();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final int TYPES = Token.ERROR + 1;
+
+    final String file;
+    long bytes;
+    final long[] tokensByType = new long[TYPES];
+    long tokens;
+    long states;
+    long symbols;
+    long dfaStates;
+    long cacheHits;
+    long cacheMisses;
+    boolean restored;
+    long nodes;
+    long syntaxErrors;
+    final long[] wallNanos = new long[Phase.values().length];
+    final long[] cpuNanos = new long[Phase.values().length];
+
+    private Phase phase;
+    private CompilerEvents.Phase event;
+    private long wallStart;
+    private long cpuStart;
+    private long tokensAtStart;
+    private long statesAtStart;
+    private long dfaStatesAtStart;
+    private long hitsAtStart;
+    private long missesAtStart;
+
+    CompileStats(String file) {
+        this.file = file;
+    }
+
+    static CompileStats current() {
+        return CURRENT.get();
+    }
+
+    // Makes these the thread's current stats until the returned scope is closed.
+    Scope install() {
+        CompileStats previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> CURRENT.set(previous);
+    }
+
+    interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    void begin(Phase phase) {
+        if (this.phase != null) end();
+        this.phase = phase;
+        event = recording() ? new CompilerEvents.Phase() : null;
+        if (event != null) event.begin();
+        tokensAtStart = tokens;
+        statesAtStart = states;
+        dfaStatesAtStart = dfaStates;
+        hitsAtStart = cacheHits;
+        missesAtStart = cacheMisses;
+        cpuStart = cpuTime();
+        wallStart = System.nanoTime();
+    }
+
+    void end() {
+        if (phase == null) return;
+        long wall = System.nanoTime() - wallStart;
+        long cpu = cpuTime() - cpuStart;
+        wallNanos[phase.ordinal()] += wall;
+        cpuNanos[phase.ordinal()] += cpu;
+
+        if (event != null) event.end();
+        if (event != null && event.shouldCommit()) {
+            event.file = file;
+            event.phase = phase.name();
+            event.bytes = phase == Phase.READ ? bytes : 0;
+            event.tokens = tokens - tokensAtStart;
+            event.states = states - statesAtStart;
+            event.symbols = phase == Phase.SYMBOLS ? symbols : 0;
+            event.dfaStates = dfaStates - dfaStatesAtStart;
+            event.cacheHits = cacheHits - hitsAtStart;
+            event.cacheMisses = cacheMisses - missesAtStart;
+            event.cpuTime = cpu;
+            event.commit();
+        }
+        if (event != null && phase == Phase.LEX) commitTokenCounts();
+        phase = null;
+        event = null;
+    }
+
+    void token(Token token) {
+        tokens++;
+        if (token == null) return;
+        int type = token.getType();
+        if (type >= 0 && type < TYPES) tokensByType[type]++;
+        StateTrace trace = token.getTrace();
+        if (trace != null) states += trace.size();
+    }
+
+    void tokens(List<Token> tokens) {
+        for (Token token : tokens) {
+            token(token);
+        }
+    }
+
+    void tokens(TokenBuffer tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            this.tokens++;
+            if (tokens.isNull(i)) continue;
+            int type = tokens.type(i);
+            if (type >= 0 && type < TYPES) tokensByType[type]++;
+            states += tokens.traceSize(i);
+        }
+    }
+
+    void automatonHit() {
+        cacheHits++;
+    }
+
+    void automatonBuilt(Dfa dfa) {
+        cacheMisses++;
+        dfaStates += dfa.size();
+    }
+
+    private void commitTokenCounts() {
+        CompilerEvents.TokenCount count = new CompilerEvents.TokenCount();
+        if (!count.isEnabled()) return;
+        for (int type = 0; type < TYPES; type++) {
+            if (tokensByType[type] == 0) continue;
+            count = new CompilerEvents.TokenCount();
+            count.file = file;
+            count.type = typeName(type);
+            count.count = tokensByType[type];
+            count.commit();
+        }
+    }
+
+    private static String typeName(int type) {
+        return type == Token.EOF ? "EOF" : AutomataVisualizer.getTokenTypeName(type);
+    }
+
+    // Event classes are only touched once Flight Recorder is up, since registering them
+    // costs a noticeable part of a short run's startup.
+    private static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    // The --stats report for this unit, e.g.
+    //   text.sa: 412 bytes, 97 tokens, 388 states, 14 symbols, 61 DFA states, cache 20 hit / 9 built
+    //     tokens   IDENTIFIER 31, OPERATOR 18, PUNCTUATOR 30, ...
+    //     read        0.21 ms wall    0.19 ms cpu
+    //     ...
+    void print(PrintStream out) {
+        out.printf("%s: %d bytes, %d tokens, %d states, %d symbols, %d DFA states, cache %d hit / %d built%n",
+            file, bytes, tokens, states, symbols, dfaStates, cacheHits, cacheMisses);
+        StringBuilder types = new StringBuilder();
+        for (int type = 0; type < TYPES; type++) {
+            if (tokensByType[type] == 0) continue;
+            if (types.length() > 0) types.append(", ");
+            types.append(typeName(type)).append(' ').append(tokensByType[type]);
+        }
+        if (types.length() > 0) out.println("  tokens   " + types);
+        if (restored) out.println("  lexing restored from the build cache");
+        if (nodes > 0) out.printf("  syntax   %d nodes, %d errors%n", nodes, syntaxErrors);
+        for (Phase phase : Phase.values()) {
+            long wall = wallNanos[phase.ordinal()];
+            if (wall == 0) continue;
+            out.printf("  %-9s %9.2f ms wall %9.2f ms cpu%n", phase.name().toLowerCase(Locale.ROOT),
+                wall / 1e6, cpuNanos[phase.ordinal()] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Keeps one JVM resident so compiles skip startup, class loading and JIT warm-up, and
+// share the automata caches. Requests come over a Unix-domain socket, one thread per
+// connection, or from stdin with the responses on stdout. The protocol is line based:
+//
+//   request:   command [arg]...      fields are tab separated if the line has a tab,
+//                                    space separated otherwise
+//   response:  status outBytes errBytes\n, then outBytes of report, then errBytes of
+//              what the command line would have printed to stderr
+//
+// Commands: `compile <options> <file>.sa` takes main's options; `cwd <dir>` sets what
+// relative paths in later requests on the connection are resolved against; `ping`;
+// `shutdown`. Watched directories are compiled once at start, which warms the JIT and
+// caches, and then again whenever a .sa file in them changes, with the daemon's own
+// options; those results go to the daemon's stderr.
+final class CompilerDaemon {
+    // Options that start other modes or write outside the response.
+    private static final Set<String> UNSUPPORTED = Set.of("--batch", "--jobs", "--out", "--daemon", "--client", "--run");
+    // Changes arriving this close together are recompiled as one round.
+    private static final long SETTLE_MILLIS = 50;
+
+    private final String[] options;
+    private final PrintStream log;
+    private final ExecutorService sessions = Executors.newCachedThreadPool(CompilerDaemon::daemonThread);
+    private volatile ServerSocketChannel server;
+    private volatile WatchService watcher;
+
+    private CompilerDaemon(String[] options, PrintStream log) {
+        this.options = options;
+        this.log = log;
+    }
+
+    static Path defaultSocket() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "sa-compiler-" + System.getProperty("user.name") + ".sock");
+    }
+
+    // main --daemon [--socket path] [--watch dir]... [options]
+    static void serve(String[] args) {
+        Path socket = null;
+        List<Path> watch = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--daemon")) {
+                continue;
+            } else if (arg.equals("--socket") && i + 1 < args.length) {
+                socket = Path.of(args[++i]);
+            } else if (arg.equals("--watch") && i + 1 < args.length) {
+                watch.add(Path.of(args[++i]).toAbsolutePath());
+            } else {
+                options.add(arg);
+            }
+        }
+        CompilerDaemon daemon = new CompilerDaemon(options.toArray(new String[0]), System.err);
+        try {
+            if (!watch.isEmpty()) daemon.watch(watch);
+            if (socket != null) {
+                daemon.listen(socket);
+            } else {
+                daemon.log.println("Compiler daemon reading requests from stdin");
+                daemon.session(System.in, System.out);
+            }
+        } catch (IOException e) {
+            daemon.log.println("Compiler daemon stopped: " + e.getMessage());
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    private void listen(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteQuietly(socket)));
+        log.println("Compiler daemon listening on " + socket);
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                sessions.execute(() -> {
+                    try (channel) {
+                        session(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+                    } catch (IOException e) {
+                        log.println("Connection dropped: " + e.getMessage());
+                    }
+                });
+            }
+        } catch (ClosedChannelException e) {
+            // shutdown closed the server
+        } finally {
+            deleteQuietly(socket);
+        }
+    }
+
+    private void stop() {
+        try {
+            if (server != null) server.close();
+            if (watcher != null) watcher.close();
+        } catch (IOException e) {
+            log.println("Compiler daemon did not stop cleanly: " + e.getMessage());
+        }
+        sessions.shutdown();
+    }
+
+    private void session(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Path cwd = Path.of("").toAbsolutePath();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = fields(line);
+            if (fields.length == 0) continue;
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int status = 0;
+            switch (fields[0]) {
+                case "compile" -> status = compile(Arrays.copyOfRange(fields, 1, fields.length), cwd, report, errors);
+                case "cwd" -> {
+                    if (fields.length == 2 && Files.isDirectory(cwd.resolve(fields[1]))) {
+                        cwd = cwd.resolve(fields[1]).normalize();
+                    } else {
+                        status = 2;
+                        write(errors, "Not a directory: " + String.join(" ", Arrays.copyOfRange(fields, 1, fields.length)));
+                    }
+                }
+                case "ping" -> write(report, "pong");
+                case "shutdown" -> {
+                    respond(out, 0, report, errors);
+                    stop();
+                    return;
+                }
+                default -> {
+                    status = 2;
+                    write(errors, "Unknown command: " + fields[0]);
+                }
+            }
+            respond(out, status, report, errors);
+        }
+    }
+
+    // Runs main's command line for one file. A failure ends the request, never the daemon.
+    private static int compile(String[] args, Path cwd, OutputStream report, OutputStream errors) {
+        PrintStream out = new PrintStream(report, false, Charset.defaultCharset());
+        PrintStream err = new PrintStream(errors, false, Charset.defaultCharset());
+        try {
+            for (String arg : args) {
+                if (UNSUPPORTED.contains(arg)) {
+                    err.println(arg + " is not available through the daemon");
+                    return 2;
+                }
+            }
+            return main.run(args, cwd, out, err);
+        } catch (RuntimeException e) {
+            err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            return 1;
+        } finally {
+            out.flush();
+            err.flush();
+        }
+    }
+
+    private static void respond(OutputStream out, int status, ByteArrayOutputStream report,
+                                ByteArrayOutputStream errors) throws IOException {
+        out.write((status + " " + report.size() + " " + errors.size() + "\n").getBytes(StandardCharsets.UTF_8));
+        report.writeTo(out);
+        errors.writeTo(out);
+        out.flush();
+    }
+
+    private static String[] fields(String line) {
+        String separator = line.indexOf('\t') >= 0 ? "\t" : " +";
+        String trimmed = line.strip();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(separator);
+    }
+
+    private static void write(ByteArrayOutputStream out, String line) {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void watch(List<Path> roots) throws IOException {
+        watcher = FileSystems.getDefault().newWatchService();
+        Set<Path> initial = new LinkedHashSet<>();
+        for (Path root : roots) {
+            register(root, initial);
+        }
+        Thread thread = daemonThread(() -> {
+            recompile(initial);
+            try {
+                while (true) {
+                    Set<Path> changed = new LinkedHashSet<>();
+                    WatchKey key = watcher.take();
+                    do {
+                        collect(key, changed);
+                    } while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+                    recompile(changed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // the daemon is stopping
+            }
+        });
+        thread.setName("sa-watch");
+        thread.start();
+    }
+
+    // Watches dir and every directory below it, adding the .sa files found to files.
+    private void register(Path dir, Set<Path> files) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                if (Files.isDirectory(path)) {
+                    path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                } else if (path.toString().endsWith(".sa")) {
+                    files.add(path);
+                }
+            }
+        } catch (IOException e) {
+            log.println("Cannot watch " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+            Path path = dir.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) register(path, changed);
+            } else if (path.toString().endsWith(".sa") && Files.isRegularFile(path)) {
+                changed.add(path);
+            }
+        }
+        key.reset();
+    }
+
+    private void recompile(Set<Path> files) {
+        for (Path file : files) {
+            long started = System.nanoTime();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            String[] args = Arrays.copyOf(options, options.length + 1);
+            args[options.length] = file.toString();
+            int status = compile(args, file.getParent(), OutputStream.nullOutputStream(), errors);
+            log.printf("%s: %s in %.1f ms%n", file, status == 0 ? "ok" : "failed", (System.nanoTime() - started) / 1e6);
+            if (errors.size() > 0) log.print(errors.toString(Charset.defaultCharset()));
+        }
+    }
+
+    private static Thread daemonThread(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // the socket file is only a name; a stale one is replaced on the next start
+        }
+    }
+
+    // main --client [--socket path] [options] <file>.sa: sends one compile request and
+    // prints the response as if the compile had run here. Returns the exit status.
+    static int client(String[] args) {
+        Path socket = defaultSocket();
+        List<String> request = new ArrayList<>();
+        request.add("compile");
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--client")) {
+                continue;
+            } else if (arg.equals("--socket") && i + 1 < args.length) {
+                socket = Path.of(args[++i]);
+            } else {
+                request.add(arg);
+            }
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            OutputStream out = Channels.newOutputStream(channel);
+            InputStream in = Channels.newInputStream(channel);
+            String lines = "cwd\t" + Path.of("").toAbsolutePath() + "\n" + String.join("\t", request) + "\n";
+            out.write(lines.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            int status = response(in, null, System.err);
+            return status != 0 ? status : response(in, System.out, System.err);
+        } catch (IOException e) {
+            System.err.println("Cannot reach the compiler daemon at " + socket + ": " + e.getMessage());
+            return 2;
+        }
+    }
+
+    // Reads one response, copying its parts to out and err where given.
+    private static int response(InputStream in, PrintStream out, PrintStream err) throws IOException {
+        String[] header = readLine(in).split(" ");
+        if (header.length != 3) throw new IOException("Malformed response header");
+        int status = Integer.parseInt(header[0]);
+        byte[] report = in.readNBytes(Integer.parseInt(header[1]));
+        byte[] errors = in.readNBytes(Integer.parseInt(header[2]));
+        if (out != null) {
+            out.write(report, 0, report.length);
+            out.flush();
+        }
+        if (err != null) {
+            err.write(errors, 0, errors.length);
+            err.flush();
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new IOException("Connection closed by the daemon");
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
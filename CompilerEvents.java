@@ -0,0 +1,74 @@
+package example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Flight Recorder events, committed by CompileStats as each phase of a unit ends. They
+// cost next to nothing unless a recording is running:
+//   java -XX:StartFlightRecording=filename=sa.jfr,settings=profile -cp . example.main ...
+//   jfr print --events example.CompilerPhase sa.jfr
+final class CompilerEvents {
+    private CompilerEvents() {}
+
+    @Name("example.CompilerPhase")
+    @Label("Compiler Phase")
+    @Category("SA Compiler")
+    @Description("One phase of compiling a unit, with what it consumed and produced")
+    @StackTrace(false)
+    static final class Phase extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("States")
+        @Description("Lexer states recorded in token traces")
+        long states;
+
+        @Label("Symbols")
+        long symbols;
+
+        @Label("DFA States Built")
+        long dfaStates;
+
+        @Label("Automata Cache Hits")
+        long cacheHits;
+
+        @Label("Automata Built")
+        long cacheMisses;
+
+        @Label("CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long cpuTime;
+    }
+
+    @Name("example.TokenCount")
+    @Label("Token Count")
+    @Category("SA Compiler")
+    @Description("How many tokens of one type a unit produced")
+    @StackTrace(false)
+    static final class TokenCount extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Type")
+        String type;
+
+        @Label("Count")
+        long count;
+    }
+}
@@ -0,0 +1,237 @@
+package example;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+class Dfa {
+    public static final int DEAD = -1;
+
+    private final int symbols;
+    private final int start;
+    private final int[] next;
+    private final int[] accept;
+    private final int[] endKind;
+
+    private Dfa(int symbols, int start, int[] next, int[] accept, int[] endKind) {
+        this.symbols = symbols;
+        this.start = start;
+        this.next = next;
+        this.accept = accept;
+        this.endKind = endKind;
+    }
+
+    public int symbols() { return symbols; }
+    public int start() { return start; }
+    public int size() { return accept.length; }
+    public int next(int state, int symbol) { return next[state * symbols + symbol]; }
+    public int accept(int state) { return accept[state]; }
+    public int endKind(int state) { return endKind[state]; }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(symbols);
+        out.writeInt(start);
+        out.writeInt(size());
+        for (int target : next) out.writeInt(target);
+        for (int kind : accept) out.writeInt(kind);
+        for (int kind : endKind) out.writeInt(kind);
+    }
+
+    static Dfa read(ByteBuffer in) throws IOException {
+        int symbols = in.getInt();
+        int start = in.getInt();
+        int size = in.getInt();
+        if (symbols < 0 || size <= 0 || start < 0 || start >= size
+                || ((long) symbols + 2) * size * Integer.BYTES > in.remaining()) {
+            throw new IOException("Corrupt DFA header");
+        }
+        int[] next = new int[symbols * size];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = in.getInt();
+            if (next[i] < DEAD || next[i] >= size) throw new IOException("Corrupt DFA transition");
+        }
+        int[] accept = new int[size];
+        for (int i = 0; i < size; i++) accept[i] = in.getInt();
+        int[] endKind = new int[size];
+        for (int i = 0; i < size; i++) endKind[i] = in.getInt();
+        return new Dfa(symbols, start, next, accept, endKind);
+    }
+
+    public static Dfa fromNfa(Nfa nfa, int nfaStart) {
+        int symbols = nfa.symbols();
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> sets = new ArrayList<>();
+
+        BitSet initial = new BitSet(nfa.size());
+        initial.set(nfaStart);
+        initial = nfa.closure(initial);
+        ids.put(initial, 0);
+        sets.add(initial);
+
+        int[] next = new int[symbols * 16];
+        for (int current = 0; current < sets.size(); current++) {
+            BitSet states = sets.get(current);
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                BitSet moved = nfa.move(states, symbol);
+                int target = DEAD;
+                if (!moved.isEmpty()) {
+                    BitSet closed = nfa.closure(moved);
+                    Integer id = ids.get(closed);
+                    if (id == null) {
+                        id = sets.size();
+                        ids.put(closed, id);
+                        sets.add(closed);
+                    }
+                    target = id;
+                }
+                int index = current * symbols + symbol;
+                if (index >= next.length) {
+                    next = Arrays.copyOf(next, next.length * 2);
+                }
+                next[index] = target;
+            }
+        }
+
+        int[] accept = new int[sets.size()];
+        int[] endKind = new int[sets.size()];
+        for (int i = 0; i < sets.size(); i++) {
+            accept[i] = nfa.acceptKind(sets.get(i));
+            endKind[i] = nfa.endKind(sets.get(i));
+        }
+        return new Dfa(symbols, 0, Arrays.copyOf(next, sets.size() * symbols), accept, endKind);
+    }
+
+    // Hopcroft partition refinement; states that can never accept collapse into DEAD.
+    public Dfa minimize() {
+        int n = size() + 1;
+        int sink = n - 1;
+        int[] delta = new int[n * symbols];
+        for (int q = 0; q < n; q++) {
+            for (int c = 0; c < symbols; c++) {
+                int t = q == sink ? DEAD : next[q * symbols + c];
+                delta[q * symbols + c] = t == DEAD ? sink : t;
+            }
+        }
+
+        int[] inverseStart = new int[n * symbols + 1];
+        for (int q = 0; q < n; q++) {
+            for (int c = 0; c < symbols; c++) {
+                inverseStart[c * n + delta[q * symbols + c] + 1]++;
+            }
+        }
+        for (int i = 1; i < inverseStart.length; i++) {
+            inverseStart[i] += inverseStart[i - 1];
+        }
+        int[] inverse = new int[n * symbols];
+        int[] fill = Arrays.copyOf(inverseStart, inverseStart.length - 1);
+        for (int q = 0; q < n; q++) {
+            for (int c = 0; c < symbols; c++) {
+                inverse[fill[c * n + delta[q * symbols + c]]++] = q;
+            }
+        }
+
+        int[] blockOf = new int[n];
+        List<BitSet> blocks = new ArrayList<>();
+        Map<Long, Integer> signatures = new HashMap<>();
+        for (int q = 0; q < n; q++) {
+            long signature = q == sink ? 0L : ((long) accept[q] << 32) | (endKind[q] & 0xffffffffL);
+            Integer block = signatures.get(signature);
+            if (block == null) {
+                block = blocks.size();
+                signatures.put(signature, block);
+                blocks.add(new BitSet(n));
+            }
+            blocks.get(block).set(q);
+            blockOf[q] = block;
+        }
+
+        Deque<Integer> work = new ArrayDeque<>();
+        BitSet queued = new BitSet();
+        for (int b = 0; b < blocks.size(); b++) {
+            work.add(b);
+            queued.set(b);
+        }
+
+        int[] touched = new int[n];
+        BitSet seen = new BitSet();
+        while (!work.isEmpty()) {
+            int splitter = work.poll();
+            queued.clear(splitter);
+            BitSet members = (BitSet) blocks.get(splitter).clone();
+            for (int c = 0; c < symbols; c++) {
+                BitSet predecessors = new BitSet(n);
+                for (int t = members.nextSetBit(0); t >= 0; t = members.nextSetBit(t + 1)) {
+                    for (int i = inverseStart[c * n + t]; i < inverseStart[c * n + t + 1]; i++) {
+                        predecessors.set(inverse[i]);
+                    }
+                }
+                if (predecessors.isEmpty()) continue;
+
+                int touchedCount = 0;
+                seen.clear();
+                for (int q = predecessors.nextSetBit(0); q >= 0; q = predecessors.nextSetBit(q + 1)) {
+                    if (!seen.get(blockOf[q])) {
+                        seen.set(blockOf[q]);
+                        touched[touchedCount++] = blockOf[q];
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int y = touched[i];
+                    BitSet inside = (BitSet) blocks.get(y).clone();
+                    inside.and(predecessors);
+                    BitSet outside = (BitSet) blocks.get(y).clone();
+                    outside.andNot(predecessors);
+                    if (outside.isEmpty()) continue;
+
+                    int split = blocks.size();
+                    blocks.set(y, inside);
+                    blocks.add(outside);
+                    for (int q = outside.nextSetBit(0); q >= 0; q = outside.nextSetBit(q + 1)) {
+                        blockOf[q] = split;
+                    }
+                    if (queued.get(y) || inside.cardinality() > outside.cardinality()) {
+                        work.add(split);
+                        queued.set(split);
+                    } else {
+                        work.add(y);
+                        queued.set(y);
+                    }
+                }
+            }
+        }
+
+        // Renumber blocks breadth-first from the start block so output is stable.
+        int deadBlock = blockOf[sink];
+        int[] renumber = new int[blocks.size()];
+        Arrays.fill(renumber, DEAD);
+        int[] order = new int[blocks.size()];
+        int count = 0;
+        renumber[blockOf[start]] = count;
+        order[count++] = blockOf[start];
+        for (int i = 0; i < count; i++) {
+            int representative = blocks.get(order[i]).nextSetBit(0);
+            for (int c = 0; c < symbols; c++) {
+                int target = blockOf[delta[representative * symbols + c]];
+                if (target != deadBlock && renumber[target] == DEAD) {
+                    renumber[target] = count;
+                    order[count++] = target;
+                }
+            }
+        }
+
+        int[] minNext = new int[count * symbols];
+        int[] minAccept = new int[count];
+        int[] minEnd = new int[count];
+        for (int i = 0; i < count; i++) {
+            int representative = blocks.get(order[i]).nextSetBit(0);
+            minAccept[i] = accept[representative];
+            minEnd[i] = endKind[representative];
+            for (int c = 0; c < symbols; c++) {
+                int target = blockOf[delta[representative * symbols + c]];
+                minNext[i * symbols + c] = target == deadBlock ? DEAD : renumber[target];
+            }
+        }
+        return new Dfa(symbols, 0, minNext, minAccept, minEnd);
+    }
+}
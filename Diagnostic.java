@@ -0,0 +1,34 @@
+package example;
+
+// One problem found while lexing. Lines and columns count from 1; offset is the
+// position in the source where the offending text starts.
+final class Diagnostic {
+    enum Kind {
+        UPPERCASE_IDENTIFIER,
+        UNTERMINATED_COMMENT,
+        UNTERMINATED_STRING,
+        MISSING_CLOSING_PAREN,
+        MALFORMED_CHARACTER,
+        UNMATCHED_BRACE,
+        MALFORMED_NUMBER
+    }
+
+    final int line;
+    final int column;
+    final int offset;
+    final Kind kind;
+    final String message;
+
+    Diagnostic(int line, int column, int offset, Kind kind, String message) {
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+        this.kind = kind;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + kind + ": " + message;
+    }
+}
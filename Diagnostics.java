@@ -0,0 +1,40 @@
+package example;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Collects what a recovering Lexer finds instead of letting the first problem end the
+// run. Diagnostics arrive in source order.
+final class Diagnostics {
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    void report(int line, int column, int offset, Diagnostic.Kind kind, String message) {
+        diagnostics.add(new Diagnostic(line, column, offset, kind, message));
+    }
+
+    // One found earlier, e.g. restored from the build cache.
+    void add(Diagnostic diagnostic) {
+        diagnostics.add(diagnostic);
+    }
+
+    boolean isEmpty() {
+        return diagnostics.isEmpty();
+    }
+
+    int size() {
+        return diagnostics.size();
+    }
+
+    List<Diagnostic> list() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    // file:line:column: KIND: message, one per line.
+    void print(String file, PrintStream out) {
+        for (Diagnostic diagnostic : diagnostics) {
+            out.println(file + ":" + diagnostic);
+        }
+    }
+}
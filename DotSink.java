@@ -0,0 +1,118 @@
+package example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+// Graphviz digraphs, one per NFA and DFA and one for the syntax tree, for `dot -Tsvg`.
+// Only those have a graph form; the other sections are left out.
+final class DotSink extends ReportSink {
+    private int graphs;
+
+    DotSink(Writer out, Set<Section> sections) {
+        super(out, sections);
+    }
+
+    @Override
+    protected void writeSource(CharSequence source) {}
+
+    @Override
+    protected void writeTokensHeader() {}
+
+    @Override
+    protected void writeToken(int index, Token token) {}
+
+    @Override
+    protected void writeAutomataHeader() {}
+
+    @Override
+    protected void writeSymbols(List<SymbolTableEntry> entries) {}
+
+    @Override
+    protected void writeAutomaton(Token token, StateTrace trace, boolean nfa, boolean dfa) throws IOException {
+        int graph = ++graphs;
+        String title = token.getValue() + " (" + AutomataVisualizer.getTokenTypeName(token.getType()) + ")";
+
+        if (nfa) {
+            StringBuilder dot = new StringBuilder();
+            begin(dot, "nfa_" + graph, title + " NFA");
+            for (int i = 0; i < trace.size(); i++) {
+                int id = trace.stateId(i);
+                String value = i < token.getValue().length() ? String.valueOf(token.getValue().charAt(i)) : "-";
+                dot.append("  q").append(id).append(" [label=").append(quote("q" + id + "\n" + value))
+                    .append(trace.isFinal(i) ? ", shape=doublecircle" : "").append("];\n");
+            }
+            dot.append("  start -> q").append(trace.stateId(0)).append(";\n");
+            for (int i = 0; i < trace.size(); i++) {
+                int from = trace.stateId(i);
+                AutomataVisualizer.nfaEdges(trace, i, (symbol, target) ->
+                    dot.append("  q").append(from).append(" -> q").append(target)
+                        .append(" [label=").append(quote(AutomataVisualizer.label(symbol))).append("];\n"));
+            }
+            dot.append("}\n");
+            out.append(dot);
+        }
+
+        if (dfa) {
+            AutomataVisualizer.Automaton automaton = automatonOf(token, trace);
+            Dfa machine = automaton.dfa;
+            StringBuilder dot = new StringBuilder();
+            begin(dot, "dfa_" + graph, title + " DFA");
+            for (int state = 0; state < machine.size(); state++) {
+                dot.append("  D").append(state)
+                    .append(machine.accept(state) != Nfa.NO_KIND ? " [shape=doublecircle]" : "").append(";\n");
+            }
+            dot.append("  start -> D").append(machine.start()).append(";\n");
+            for (int state = 0; state < machine.size(); state++) {
+                for (int symbol = 0; symbol < automaton.alphabet.length; symbol++) {
+                    int target = machine.next(state, symbol);
+                    if (target == Dfa.DEAD) continue;
+                    dot.append("  D").append(state).append(" -> D").append(target)
+                        .append(" [label=").append(quote(AutomataVisualizer.label(automaton.alphabet[symbol]))).append("];\n");
+                }
+            }
+            dot.append("}\n");
+            out.append(dot);
+        }
+    }
+
+    @Override
+    protected void writeAst(Ast ast, LineIndex lines) throws IOException {
+        StringBuilder dot = new StringBuilder();
+        dot.append("digraph ast {\n");
+        dot.append("  node [shape=box];\n");
+        ast.walk((node, parent, depth) -> {
+            String value = ast.value(node);
+            String label = Ast.kindName(ast.kind(node)) + (value == null ? "" : "\n" + value);
+            dot.append("  n").append(node).append(" [label=").append(quote(label))
+                .append(ast.kind(node) == Ast.ERROR ? ", color=red" : "").append("];\n");
+            if (parent != Ast.NONE) dot.append("  n").append(parent).append(" -> n").append(node).append(";\n");
+        });
+        dot.append("}\n");
+        out.append(dot);
+    }
+
+    private static void begin(StringBuilder dot, String name, String label) {
+        dot.append("digraph ").append(name).append(" {\n");
+        dot.append("  label=").append(quote(label)).append(";\n");
+        dot.append("  rankdir=LR;\n");
+        dot.append("  node [shape=circle];\n");
+        dot.append("  start [shape=point];\n");
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
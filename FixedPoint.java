@@ -0,0 +1,161 @@
+package example;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+// Numeric literals as longs scaled by 10^5, the five places dec values are rounded to.
+// parse() reads digits straight from the input range and rounds HALF_UP on the sixth
+// decimal digit, which decides it alone since every digit after it only adds less than
+// half a unit. Literals too large for a scaled long fall back to BigDecimal. Any digit
+// Character.digit knows counts, as with BigDecimal, and the text form always uses ASCII.
+final class FixedPoint {
+    static final int SCALE = 5;
+    static final long ONE = 100_000;
+
+    // What parse() returns when there is no fixed-point value: never a literal's value,
+    // since literals carry no sign.
+    static final long OVERFLOW = -1;
+    static final long MALFORMED = -2;
+
+    // Largest whole part whose scaled value, fraction and round-up included, fits a long.
+    private static final long MAX_WHOLE = Long.MAX_VALUE / ONE - 1;
+
+    private FixedPoint() {}
+
+    // input[start, end): digits with at most one '.', HALF_UP to SCALE places.
+    static long parse(CharSequence input, int start, int end) {
+        long whole = 0;
+        int i = start;
+        for (; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.') break;
+            int digit = Character.digit(c, 10);
+            if (digit < 0) return MALFORMED;
+            if (whole > (MAX_WHOLE - digit) / 10) return overflowOrMalformed(input, i, end);
+            whole = whole * 10 + digit;
+        }
+        long fraction = 0;
+        int places = 0;
+        boolean roundUp = false;
+        for (i++; i < end; i++) {
+            int digit = Character.digit(input.charAt(i), 10);
+            if (digit < 0) return MALFORMED;
+            if (places < SCALE) {
+                fraction = fraction * 10 + digit;
+                places++;
+            } else if (places == SCALE) {
+                roundUp = digit >= 5;
+                places++;
+            }
+        }
+        for (; places < SCALE; places++) fraction *= 10;
+        return whole * ONE + fraction + (roundUp ? 1 : 0);
+    }
+
+    // The dec text of a value, e.g. 447755 -> "4.47755".
+    static String format(long fixed) {
+        if (fixed < 0) {
+            return fixed == Long.MIN_VALUE ? decimal(fixed).toPlainString() : "-" + format(-fixed);
+        }
+        String whole = Long.toString(fixed / ONE);
+        char[] text = new char[whole.length() + 1 + SCALE];
+        whole.getChars(0, whole.length(), text, 0);
+        text[whole.length()] = '.';
+        long fraction = fixed % ONE;
+        for (int i = text.length - 1; i > whole.length(); i--) {
+            text[i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return new String(text);
+    }
+
+    // The slow path for literals parse() could not fit in a long.
+    static BigDecimal decimal(CharSequence text) {
+        return new BigDecimal(text.toString()).setScale(SCALE, RoundingMode.HALF_UP);
+    }
+
+    static BigDecimal decimal(long fixed) {
+        return BigDecimal.valueOf(fixed, SCALE);
+    }
+
+    // Arithmetic on values for programs run by Interpreter. Results round HALF_UP to
+    // SCALE places like literals do; a result no long can hold throws ArithmeticException
+    // rather than wrapping. The exact fast paths fall back to BigDecimal on overflow.
+    static long multiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) return divideRounded(low, ONE);
+        return exact(decimal(a).multiply(decimal(b)));
+    }
+
+    static long divide(long a, long b) {
+        if (b == 0) throw new ArithmeticException("division by zero");
+        if (Math.abs(a) <= Long.MAX_VALUE / ONE) return divideRounded(a * ONE, b);
+        return exact(decimal(a).divide(decimal(b), SCALE, RoundingMode.HALF_UP));
+    }
+
+    static long remainder(long a, long b) {
+        if (b == 0) throw new ArithmeticException("division by zero");
+        return a % b;
+    }
+
+    // A whole exponent is computed to 34 digits, more than a long has, so it rounds as
+    // if exact; any other exponent goes through double, as no closed form exists.
+    static long power(long a, long b) {
+        double estimate = Math.pow(a / (double) ONE, b / (double) ONE);
+        if (b % ONE == 0) {
+            long n = b / ONE;
+            if (n == 0) return ONE;
+            if (a == 0 && n < 0) throw new ArithmeticException("division by zero");
+            if (a == ONE || a == -ONE) return a > 0 || n % 2 == 0 ? ONE : -ONE;
+            if (Math.abs(estimate) > 1e14) throw new ArithmeticException("dec overflow");
+            if (Math.abs(estimate) < 1e-6) return 0;
+            return exact(decimal(a).pow((int) n, MathContext.DECIMAL128));
+        }
+        if (Double.isNaN(estimate)) throw new ArithmeticException("dec power is undefined");
+        if (Math.abs(estimate) > 9e13) throw new ArithmeticException("dec overflow");
+        return Math.round(estimate * ONE);
+    }
+
+    static long fromWhole(long whole) {
+        if (Math.abs(whole) > Long.MAX_VALUE / ONE) throw new ArithmeticException("dec overflow");
+        return whole * ONE;
+    }
+
+    // To the nearest whole number, halves away from zero.
+    static long toWhole(long fixed) {
+        return divideRounded(fixed, ONE);
+    }
+
+    private static long divideRounded(long n, long d) {
+        long quotient = n / d;
+        long remainder = n % d;
+        if (remainder != 0 && Math.abs(remainder) >= Math.abs(d) - Math.abs(remainder)) {
+            quotient += (n < 0) == (d < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    private static long exact(BigDecimal value) {
+        try {
+            return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("dec overflow");
+        }
+    }
+
+    // A malformed literal is malformed however long it is.
+    private static long overflowOrMalformed(CharSequence input, int from, int end) {
+        boolean point = false;
+        for (int i = from; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (Character.digit(c, 10) < 0) {
+                return MALFORMED;
+            }
+        }
+        return OVERFLOW;
+    }
+}
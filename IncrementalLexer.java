@@ -0,0 +1,465 @@
+package example;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
+
+// Keeps the tokens of an edited buffer up to date. Besides the tokens it remembers every
+// lexer step: where it starts, and the token count, state counter, scope depth and scope
+// stack size before it. An edit is re-lexed from the last step that cannot have looked
+// at the edited text, until a step starts where an old step started. Lexemes only depend
+// on where a step starts, so from there on the old tokens are still right; only their
+// scopes may differ, and those are fixed until depth and stack size agree again.
+//
+// Text, tokens and steps are gap buffers with the gap at the last edit, and steps after
+// the gap are stored relative to the end, so an edit costs about the same anywhere in a
+// file of any size. The exception is tracing: a full re-lex numbers states from the
+// start of the file, so the state ids of every later token move when an edit changes
+// how many states come before them.
+//
+// Tokens come out as Lexer.tokenize() would produce them for the whole buffer. Errors
+// are reported by lexing the whole buffer again so their messages match; the next edit
+// then starts over from scratch.
+final class IncrementalLexer {
+    // The table engine decides a token after looking at most this many chars past its
+    // end (a lone quote followed by two chars).
+    private static final int LOOKAHEAD = 2;
+
+    private final Lexer.Trace trace;
+    private final GapText text;
+    private GapList tokens;
+    private Steps steps;
+    private boolean broken;
+
+    // A token range: `removed` tokens starting at `start` were replaced by `inserted` ones.
+    static final class Change {
+        final int start;
+        final int removed;
+        final int inserted;
+
+        Change(int start, int removed, int inserted) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{start=" + start + ", removed=" + removed + ", inserted=" + inserted + "}";
+        }
+    }
+
+    public IncrementalLexer(CharSequence source, Lexer.Trace trace) {
+        this.trace = trace;
+        this.text = new GapText(source);
+        this.broken = true;
+        relexAll();
+    }
+
+    // Live views of the current text and tokens; the tokens end with EOF.
+    public CharSequence text() { return text; }
+    public List<Token> tokens() { return tokens; }
+
+    // Replaces `removed` chars at `offset` with `inserted` and returns the tokens that
+    // changed. Tokens after the change keep their place.
+    public Change edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removed) + ") outside text of length " + text.length());
+        }
+        text.replace(offset, removed, inserted);
+        if (broken) {
+            int before = tokens == null ? 0 : tokens.size();
+            relexAll();
+            return new Change(0, before, tokens.size());
+        }
+
+        int delta = inserted.length() - removed;
+        int first = steps.before(Math.max(0, offset - LOOKAHEAD));
+        LexChunk chunk = new LexChunk(steps.start(first), Integer.MAX_VALUE);
+        Lexer lexer = new Lexer(text, Lexer.Engine.TABLE, trace);
+        int last;
+        try {
+            lexer.lexChunk(chunk, offset + inserted.length());
+            while ((last = steps.at(chunk.end() - delta)) < 0) {
+                lexer.lexChunk(chunk, chunk.end() + 1);
+            }
+        } catch (RuntimeException e) {
+            broken = true;
+            relexAll();
+            throw e;
+        }
+
+        int from = steps.firstToken(first);
+        int oldCount = steps.firstToken(last) - from;
+        int newCount = chunk.tokens.size();
+        int stateBase = steps.counter(first);
+        int stateDelta = stateBase + chunk.states() - steps.counter(last);
+        for (Token token : chunk.tokens) {
+            if (token == null) continue;
+            token.shiftStates(stateBase);
+            // Copy the text out, since the buffer changes under lazy tokens.
+            token.getValue();
+        }
+
+        int depth = steps.depth(first);
+        int scopeCount = steps.scopes(first);
+        steps.replace(first, last, delta, newCount - oldCount, stateDelta);
+        tokens.replace(from, oldCount, chunk.tokens, delta);
+        int b = 0;
+        for (int i = 0; i < chunk.stepCount(); i++) {
+            steps.insert(chunk.stepStart(i), from + chunk.stepTokens(i), stateBase + chunk.stepStates(i), depth, scopeCount);
+            int end = i + 1 < chunk.stepCount() ? chunk.stepTokens(i + 1) : newCount;
+            for (int t = chunk.stepTokens(i); t < end; t++) {
+                Token token = chunk.tokens.get(t);
+                if (token == null) continue;
+                if (token.getType() == Token.IDENTIFIER) {
+                    token.setScope(depth == 0 ? "Global" : "Local");
+                } else if (b < chunk.braceCount() && chunk.braceToken(b) == t) {
+                    if (chunk.braceOpens(b++)) {
+                        depth++;
+                        scopeCount++;
+                    } else {
+                        if (scopeCount == 0) {
+                            broken = true;
+                            throw new EmptyStackException();
+                        }
+                        depth = Math.max(0, depth - 1);
+                        scopeCount--;
+                    }
+                }
+            }
+        }
+
+        if (stateDelta != 0 && trace != Lexer.Trace.NONE) {
+            for (int t = from + newCount; t < tokens.size(); t++) {
+                Token token = tokens.get(t);
+                if (token != null) token.shiftStates(stateDelta);
+            }
+        }
+
+        int rescoped = rescope(first + chunk.stepCount(), depth, scopeCount);
+        int changed = Math.max(from + newCount, steps.firstToken(rescoped)) - from;
+        return new Change(from, changed - newCount + oldCount, changed);
+    }
+
+    // Carries a new depth and stack size over the old steps from `step` on, until they
+    // agree with what was recorded. Returns the first step that needed no change.
+    private int rescope(int step, int depth, int scopeCount) {
+        int end = steps.size() - 1;
+        for (; step < end && (steps.depth(step) != depth || steps.scopes(step) != scopeCount); step++) {
+            steps.setScope(step, depth, scopeCount);
+            for (int t = steps.firstToken(step); t < steps.firstToken(step + 1); t++) {
+                Token token = tokens.get(t);
+                if (token == null) continue;
+                if (token.getType() == Token.IDENTIFIER) {
+                    token.setScope(depth == 0 ? "Global" : "Local");
+                } else if (token.getType() == Token.PUNCTUATOR && token.getValue().equals("{")) {
+                    depth++;
+                    scopeCount++;
+                } else if (token.getType() == Token.PUNCTUATOR && token.getValue().equals("}")) {
+                    if (scopeCount == 0) {
+                        broken = true;
+                        throw new EmptyStackException();
+                    }
+                    depth = Math.max(0, depth - 1);
+                    scopeCount--;
+                }
+            }
+        }
+        if (step == end) {
+            steps.setScope(step, depth, scopeCount);
+        }
+        return step;
+    }
+
+    private void relexAll() {
+        LexChunk chunk = new LexChunk(0, Integer.MAX_VALUE);
+        try {
+            new Lexer(text, Lexer.Engine.TABLE, trace).lexChunk(chunk, text.length());
+        } catch (RuntimeException e) {
+            // Lexer would have stopped at an unmatched '}' before getting this far.
+            int scopeCount = 1;
+            for (int b = 0; b < chunk.braceCount(); b++) {
+                scopeCount += chunk.braceOpens(b) ? 1 : -1;
+                if (scopeCount < 0) throw new EmptyStackException();
+            }
+            throw e;
+        }
+
+        steps = new Steps(chunk.stepCount() + 1, text.length(), chunk.tokens.size(), chunk.states());
+        for (int i = 0; i < chunk.stepCount(); i++) {
+            steps.insert(chunk.stepStart(i), chunk.stepTokens(i), chunk.stepStates(i), -1, -1);
+        }
+        steps.insert(text.length(), chunk.tokens.size(), chunk.states(), -1, -1);
+        for (Token token : chunk.tokens) {
+            if (token != null) token.getValue();
+        }
+        chunk.tokens.add(new Token(Token.EOF, "EOF", null, "Global", text.length()));
+        tokens = new GapList(chunk.tokens, text.length());
+        rescope(0, 0, 1);
+        broken = false;
+    }
+
+    // Chars with a gap at the last edit.
+    private static final class GapText implements CharSequence {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapText(CharSequence source) {
+            chars = new char[source.length() + 64];
+            for (int i = 0; i < source.length(); i++) {
+                chars[i] = source.charAt(i);
+            }
+            gapStart = source.length();
+            gapEnd = chars.length;
+        }
+
+        void replace(int offset, int removed, CharSequence inserted) {
+            moveGap(offset);
+            gapEnd += removed;
+            if (gapEnd - gapStart < inserted.length()) {
+                int capacity = Math.max(chars.length * 2, length() + inserted.length() + 64);
+                char[] grown = new char[capacity];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                int tail = chars.length - gapEnd;
+                System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+                chars = grown;
+                gapEnd = capacity - tail;
+            }
+            for (int i = 0; i < inserted.length(); i++) {
+                chars[gapStart++] = inserted.charAt(i);
+            }
+        }
+
+        private void moveGap(int to) {
+            if (to < gapStart) {
+                System.arraycopy(chars, to, chars, gapEnd - (gapStart - to), gapStart - to);
+            } else {
+                System.arraycopy(chars, gapEnd, chars, gapStart, to - gapStart);
+            }
+            gapEnd += to - gapStart;
+            gapStart = to;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+
+        @Override
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new StringBuilder(end - start).append(this, start, end).toString();
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(chars, 0, gapStart).append(chars, gapEnd, chars.length - gapEnd).toString();
+        }
+    }
+
+    // Tokens with a gap at the last edit. Like the starts in Steps, the offsets of tokens
+    // after the gap are kept relative to the length of the text and only put on a token
+    // when it is looked up, so an edit does not have to touch every token behind it.
+    private static final class GapList extends AbstractList<Token> {
+        private Token[] items;
+        private int[] offsets;
+        private int gapStart;
+        private int gapEnd;
+        private int textLength;
+
+        GapList(List<Token> tokens, int textLength) {
+            items = tokens.toArray(new Token[tokens.size() + 64]);
+            offsets = new int[items.length];
+            gapStart = tokens.size();
+            gapEnd = items.length;
+            this.textLength = textLength;
+        }
+
+        // The inserted tokens have their offsets in the edited text, textDelta chars
+        // longer or shorter than before.
+        void replace(int from, int removed, List<Token> inserted, int textDelta) {
+            moveGap(from);
+            Arrays.fill(items, gapEnd, gapEnd + removed, null);
+            gapEnd += removed;
+            textLength += textDelta;
+            if (gapEnd - gapStart < inserted.size()) {
+                int capacity = Math.max(items.length * 2, size() + inserted.size() + 64);
+                int tail = items.length - gapEnd;
+                Token[] grown = new Token[capacity];
+                System.arraycopy(items, 0, grown, 0, gapStart);
+                System.arraycopy(items, gapEnd, grown, capacity - tail, tail);
+                int[] grownOffsets = new int[capacity];
+                System.arraycopy(offsets, gapEnd, grownOffsets, capacity - tail, tail);
+                items = grown;
+                offsets = grownOffsets;
+                gapEnd = capacity - tail;
+            }
+            for (Token token : inserted) {
+                items[gapStart++] = token;
+            }
+        }
+
+        // Slots that end up in the gap are cleared so dropped tokens can be collected.
+        private void moveGap(int to) {
+            while (gapStart > to) {
+                gapStart--;
+                gapEnd--;
+                Token token = items[gapStart];
+                items[gapEnd] = token;
+                offsets[gapEnd] = token == null ? 0 : token.getOffset() - textLength;
+                items[gapStart] = null;
+            }
+            while (gapStart < to) {
+                Token token = items[gapEnd];
+                if (token != null) token.setOffset(offsets[gapEnd] + textLength);
+                items[gapStart] = token;
+                items[gapEnd] = null;
+                gapStart++;
+                gapEnd++;
+            }
+        }
+
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+            if (index < gapStart) return items[index];
+            Token token = items[index + gapEnd - gapStart];
+            if (token != null) token.setOffset(offsets[index + gapEnd - gapStart] + textLength);
+            return token;
+        }
+
+        @Override
+        public int size() {
+            return items.length - (gapEnd - gapStart);
+        }
+    }
+
+    // Step records with a gap at the last edit. Starts, token counts and state counters
+    // after the gap are kept relative to the totals for the whole text, so an edit only
+    // has to update those totals for every step behind it to move.
+    private static final class Steps {
+        private int[] starts;
+        private int[] firstTokens;
+        private int[] counters;
+        private int[] depths;
+        private int[] scopes;
+        private int gapStart;
+        private int gapEnd;
+        private int textLength;
+        private int tokenCount;
+        private int stateCount;
+
+        Steps(int capacity, int textLength, int tokenCount, int stateCount) {
+            capacity += 64;
+            starts = new int[capacity];
+            firstTokens = new int[capacity];
+            counters = new int[capacity];
+            depths = new int[capacity];
+            scopes = new int[capacity];
+            gapEnd = capacity;
+            this.textLength = textLength;
+            this.tokenCount = tokenCount;
+            this.stateCount = stateCount;
+        }
+
+        int size() { return starts.length - gap(); }
+        int start(int step) { return step < gapStart ? starts[step] : starts[step + gap()] + textLength; }
+        int firstToken(int step) { return step < gapStart ? firstTokens[step] : firstTokens[step + gap()] + tokenCount; }
+        int counter(int step) { return step < gapStart ? counters[step] : counters[step + gap()] + stateCount; }
+        int depth(int step) { return depths[physical(step)]; }
+        int scopes(int step) { return scopes[physical(step)]; }
+
+        void setScope(int step, int depth, int scopeCount) {
+            depths[physical(step)] = depth;
+            scopes[physical(step)] = scopeCount;
+        }
+
+        private int gap() { return gapEnd - gapStart; }
+        private int physical(int step) { return step < gapStart ? step : step + gap(); }
+
+        // Last step starting at or before position.
+        int before(int position) {
+            int low = 0;
+            int high = size() - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (start(middle) <= position) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        // The step starting exactly at position, or -1.
+        int at(int position) {
+            int step = before(position);
+            return start(step) == position ? step : -1;
+        }
+
+        // Drops the steps [first, last) and moves the ones after by the given deltas.
+        // The steps replacing them are then added with insert().
+        void replace(int first, int last, int textDelta, int tokenDelta, int stateDelta) {
+            moveGap(last);
+            gapStart = first;
+            textLength += textDelta;
+            tokenCount += tokenDelta;
+            stateCount += stateDelta;
+        }
+
+        void insert(int start, int firstToken, int counter, int depth, int scopeCount) {
+            if (gapStart == gapEnd) {
+                int capacity = starts.length * 2;
+                int tail = starts.length - gapEnd;
+                starts = grow(starts, capacity, tail);
+                firstTokens = grow(firstTokens, capacity, tail);
+                counters = grow(counters, capacity, tail);
+                depths = grow(depths, capacity, tail);
+                scopes = grow(scopes, capacity, tail);
+                gapEnd = capacity - tail;
+            }
+            starts[gapStart] = start;
+            firstTokens[gapStart] = firstToken;
+            counters[gapStart] = counter;
+            depths[gapStart] = depth;
+            scopes[gapStart] = scopeCount;
+            gapStart++;
+        }
+
+        private int[] grow(int[] column, int capacity, int tail) {
+            int[] grown = new int[capacity];
+            System.arraycopy(column, 0, grown, 0, gapStart);
+            System.arraycopy(column, column.length - tail, grown, capacity - tail, tail);
+            return grown;
+        }
+
+        private void moveGap(int to) {
+            while (gapStart > to) {
+                gapStart--;
+                gapEnd--;
+                starts[gapEnd] = starts[gapStart] - textLength;
+                firstTokens[gapEnd] = firstTokens[gapStart] - tokenCount;
+                counters[gapEnd] = counters[gapStart] - stateCount;
+                depths[gapEnd] = depths[gapStart];
+                scopes[gapEnd] = scopes[gapStart];
+            }
+            while (gapStart < to) {
+                starts[gapStart] = starts[gapEnd] + textLength;
+                firstTokens[gapStart] = firstTokens[gapEnd] + tokenCount;
+                counters[gapStart] = counters[gapEnd] + stateCount;
+                depths[gapStart] = depths[gapEnd];
+                scopes[gapStart] = scopes[gapEnd];
+                gapStart++;
+                gapEnd++;
+            }
+        }
+    }
+}
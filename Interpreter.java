@@ -0,0 +1,206 @@
+package example;
+
+import java.io.IOException;
+
+// Runs a Program: one switch over the opcode per instruction, operands read straight
+// from the code array and values kept in a long[] of registers, so nothing is boxed.
+// Reads and writes go through a ProgramIo. Arithmetic errors (overflow, division by
+// zero) and unreadable input stop the program with an ArithmeticException or
+// IllegalArgumentException naming where it stopped.
+//
+// With the JIT tier on, a loop that branches back JIT_THRESHOLD times has the program
+// compiled by ProgramJit, and the compiled code takes over at the top of that loop
+// with the registers as they are. Programs ProgramJit cannot compile stay here.
+final class Interpreter {
+    static final int JIT_THRESHOLD = 10_000;
+
+    private final ProgramIo io;
+    private final boolean jit;
+
+    Interpreter(ProgramIo io, boolean jit) {
+        this.io = io;
+        this.jit = jit;
+    }
+
+    void run(Program program) throws IOException {
+        int[] code = program.code;
+        long[] constants = program.constants;
+        long[] r = new long[program.registers];
+        int backEdges = jit ? 0 : Integer.MIN_VALUE;
+        ProgramJit.Compiled compiled = null;
+        int pc = 0;
+        try {
+            interpret:
+            while (true) {
+                switch (code[pc]) {
+                    case Program.HALT:
+                        return;
+                    case Program.CONST:
+                        r[code[pc + 1]] = constants[code[pc + 2]];
+                        pc += 3;
+                        break;
+                    case Program.MOVE:
+                        r[code[pc + 1]] = r[code[pc + 2]];
+                        pc += 3;
+                        break;
+                    case Program.ADD_N:
+                        r[code[pc + 1]] = Math.addExact(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.SUB_N:
+                        r[code[pc + 1]] = Math.subtractExact(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.MUL_N:
+                        r[code[pc + 1]] = Math.multiplyExact(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.DIV_N:
+                        r[code[pc + 1]] = divide(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.MOD_N:
+                        r[code[pc + 1]] = remainder(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.POW_N:
+                        r[code[pc + 1]] = power(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.ADD_D:
+                        r[code[pc + 1]] = Math.addExact(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.SUB_D:
+                        r[code[pc + 1]] = Math.subtractExact(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.MUL_D:
+                        r[code[pc + 1]] = FixedPoint.multiply(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.DIV_D:
+                        r[code[pc + 1]] = FixedPoint.divide(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.MOD_D:
+                        r[code[pc + 1]] = FixedPoint.remainder(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.POW_D:
+                        r[code[pc + 1]] = FixedPoint.power(r[code[pc + 2]], r[code[pc + 3]]);
+                        pc += 4;
+                        break;
+                    case Program.NEG:
+                        r[code[pc + 1]] = Math.negateExact(r[code[pc + 2]]);
+                        pc += 3;
+                        break;
+                    case Program.N2D:
+                        r[code[pc + 1]] = FixedPoint.fromWhole(r[code[pc + 2]]);
+                        pc += 3;
+                        break;
+                    case Program.D2N:
+                        r[code[pc + 1]] = FixedPoint.toWhole(r[code[pc + 2]]);
+                        pc += 3;
+                        break;
+                    case Program.JUMP:
+                        pc = code[pc + 1];
+                        break;
+                    case Program.JUMP_IF_ZERO:
+                        pc = r[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                        break;
+                    case Program.JUMP_IF_NONZERO:
+                        if (r[code[pc + 1]] == 0) {
+                            pc += 3;
+                            break;
+                        }
+                        if (code[pc + 2] < pc && ++backEdges == JIT_THRESHOLD) {
+                            compiled = ProgramJit.compile(program);
+                            if (compiled != null) {
+                                pc = code[pc + 2];
+                                break interpret;
+                            }
+                        }
+                        pc = code[pc + 2];
+                        break;
+                    case Program.WRITE_N:
+                        io.writeNum(r[code[pc + 1]]);
+                        pc += 2;
+                        break;
+                    case Program.WRITE_D:
+                        io.writeDec(r[code[pc + 1]]);
+                        pc += 2;
+                        break;
+                    case Program.WRITE_B:
+                        io.writeBool(r[code[pc + 1]]);
+                        pc += 2;
+                        break;
+                    case Program.WRITE_C:
+                        io.writeChar(r[code[pc + 1]]);
+                        pc += 2;
+                        break;
+                    case Program.WRITE_S:
+                        io.writeString(program.strings[code[pc + 1]]);
+                        pc += 2;
+                        break;
+                    case Program.READ_N:
+                        r[code[pc + 1]] = io.readNum();
+                        pc += 2;
+                        break;
+                    case Program.READ_D:
+                        r[code[pc + 1]] = io.readDec();
+                        pc += 2;
+                        break;
+                    case Program.READ_B:
+                        r[code[pc + 1]] = io.readBool();
+                        pc += 2;
+                        break;
+                    case Program.READ_C:
+                        r[code[pc + 1]] = io.readChar();
+                        pc += 2;
+                        break;
+                    default:
+                        throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+                }
+            }
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Runtime error: " + e.getMessage() + where(program, pc));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Runtime error: " + e.getMessage() + where(program, pc), e);
+        }
+        ProgramJit.run(program, compiled, io, r, pc);
+    }
+
+    // num division and powers, which Math has no exact forms of; the code ProgramJit
+    // generates calls them too.
+    static long divide(long a, long b) {
+        if (b == 0) throw new ArithmeticException("division by zero");
+        if (a == Long.MIN_VALUE && b == -1) throw new ArithmeticException("num overflow");
+        return a / b;
+    }
+
+    static long remainder(long a, long b) {
+        if (b == 0) throw new ArithmeticException("division by zero");
+        return b == -1 ? 0 : a % b;
+    }
+
+    static long power(long base, long exponent) {
+        if (exponent < 0) {
+            if (base == 0) throw new ArithmeticException("division by zero");
+            if (base == 1 || base == -1) return (exponent & 1) == 0 ? 1 : base;
+            return 0;
+        }
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) result = Math.multiplyExact(result, base);
+            exponent >>= 1;
+            if (exponent > 0) base = Math.multiplyExact(base, base);
+        }
+        return result;
+    }
+
+    static String where(Program program, int pc) {
+        int offset = pc < program.offsets.length ? program.offsets[pc] : -1;
+        return offset < 0 ? " at instruction " + pc : LineIndex.at(program.lines, offset);
+    }
+}
@@ -0,0 +1,176 @@
+package example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+// One JSON object per line, tagged with the section it belongs to:
+//   {"section":"token","index":0,"type":"IDENTIFIER","value":"num","scope":"Global","firstState":0,"path":"num","final":false}
+//   {"section":"nfa","token":"num","type":"IDENTIFIER","states":[[0,"n",false],...],"transitions":[[0,"ε",1],...]}
+//   {"section":"dfa","token":"num","type":"IDENTIFIER","start":0,"final":[3],"transitions":[[0,"n",1],...]}
+//   {"section":"symbol","name":"num","type":"Identifier","scope":"Global","value":"-","count":2}
+//   {"section":"ast","node":3,"parent":1,"kind":"BINARY","value":"+","offset":12}
+// A null token (bad character literal) is {"section":"token","index":n,"type":null}.
+final class JsonLinesSink extends ReportSink {
+    JsonLinesSink(Writer out, Set<Section> sections) {
+        super(out, sections);
+    }
+
+    @Override
+    protected void writeSource(CharSequence source) throws IOException {
+        StringBuilder json = new StringBuilder(source.length() + 32);
+        json.append("{\"section\":\"source\",\"text\":");
+        string(json, source);
+        out.append(json.append("}\n"));
+    }
+
+    @Override
+    protected void writeTokensHeader() {}
+
+    @Override
+    protected void writeToken(int index, Token token) throws IOException {
+        StringBuilder json = new StringBuilder(96);
+        json.append("{\"section\":\"token\",\"index\":").append(index).append(",\"type\":");
+        if (token == null) {
+            out.append(json.append("null}\n"));
+            return;
+        }
+        string(json, token.getTypeName());
+        json.append(",\"value\":");
+        string(json, token.getValue());
+        json.append(",\"scope\":");
+        string(json, token.getScope());
+        StateTrace trace = token.getTrace();
+        if (trace != null && trace.size() > 0) {
+            json.append(",\"firstState\":").append(trace.stateId(0)).append(",\"path\":");
+            string(json, trace.pattern());
+            json.append(",\"final\":").append(trace.isFinal(trace.size() - 1));
+        }
+        out.append(json.append("}\n"));
+    }
+
+    @Override
+    protected void writeAutomataHeader() {}
+
+    @Override
+    protected void writeAutomaton(Token token, StateTrace trace, boolean nfa, boolean dfa) throws IOException {
+        String value = token.getValue();
+        String type = AutomataVisualizer.getTokenTypeName(token.getType());
+
+        if (nfa) {
+            StringBuilder json = new StringBuilder(128);
+            header(json, "nfa", value, type);
+            json.append(",\"states\":[");
+            for (int i = 0; i < trace.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append('[').append(trace.stateId(i)).append(',');
+                string(json, i < value.length() ? String.valueOf(value.charAt(i)) : "-");
+                json.append(',').append(trace.isFinal(i)).append(']');
+            }
+            json.append("],\"transitions\":[");
+            for (int i = 0; i < trace.size(); i++) {
+                int from = trace.stateId(i);
+                AutomataVisualizer.nfaEdges(trace, i, (symbol, target) -> {
+                    if (json.charAt(json.length() - 1) != '[') json.append(',');
+                    json.append('[').append(from).append(',');
+                    string(json, symbol == ' ' ? "ε" : String.valueOf(symbol));
+                    json.append(',').append(target).append(']');
+                });
+            }
+            out.append(json.append("]}\n"));
+        }
+
+        if (dfa) {
+            AutomataVisualizer.Automaton automaton = automatonOf(token, trace);
+            Dfa machine = automaton.dfa;
+            StringBuilder json = new StringBuilder(128);
+            header(json, "dfa", value, type);
+            json.append(",\"start\":").append(machine.start()).append(",\"final\":[");
+            boolean first = true;
+            for (int state = 0; state < machine.size(); state++) {
+                if (machine.accept(state) == Nfa.NO_KIND) continue;
+                if (!first) json.append(',');
+                json.append(state);
+                first = false;
+            }
+            json.append("],\"transitions\":[");
+            first = true;
+            for (int state = 0; state < machine.size(); state++) {
+                for (int symbol = 0; symbol < automaton.alphabet.length; symbol++) {
+                    int target = machine.next(state, symbol);
+                    if (target == Dfa.DEAD) continue;
+                    if (!first) json.append(',');
+                    json.append('[').append(state).append(',');
+                    string(json, String.valueOf(automaton.alphabet[symbol]));
+                    json.append(',').append(target).append(']');
+                    first = false;
+                }
+            }
+            out.append(json.append("]}\n"));
+        }
+    }
+
+    @Override
+    protected void writeSymbols(List<SymbolTableEntry> entries) throws IOException {
+        StringBuilder json = new StringBuilder(96);
+        for (SymbolTableEntry entry : entries) {
+            json.setLength(0);
+            json.append("{\"section\":\"symbol\",\"name\":");
+            string(json, entry.name);
+            json.append(",\"type\":");
+            string(json, entry.type);
+            json.append(",\"scope\":");
+            string(json, entry.scope);
+            json.append(",\"value\":");
+            string(json, entry.value);
+            json.append(",\"count\":").append(entry.occurrences).append("}\n");
+            out.append(json);
+        }
+    }
+
+    @Override
+    protected void writeAst(Ast ast, LineIndex lines) throws IOException {
+        StringBuilder json = new StringBuilder(96);
+        ast.walk((node, parent, depth) -> {
+            json.append("{\"section\":\"ast\",\"node\":").append(node).append(",\"parent\":").append(parent)
+                .append(",\"kind\":\"").append(Ast.kindName(ast.kind(node))).append("\",\"value\":");
+            string(json, ast.value(node));
+            json.append(",\"offset\":").append(ast.offset(node)).append("}\n");
+        });
+        out.append(json);
+    }
+
+    private static void header(StringBuilder json, String section, String token, String type) {
+        json.append("{\"section\":\"").append(section).append("\",\"token\":");
+        string(json, token);
+        json.append(",\"type\":");
+        string(json, type);
+    }
+
+    private static void string(StringBuilder json, CharSequence text) {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,68 @@
+package example;
+
+import java.util.Arrays;
+import java.util.Set;
+
+// Classifies a word straight from the input range. The reserved words from Lexer's sets
+// are bucketed by length and first letter when the class loads, so a lookup compares
+// at most the few words in one bucket and never builds a String.
+final class Keywords {
+    private static final int LETTERS = 26;
+
+    private static char[][][] words = new char[0][][];
+    private static int[][] types = new int[0][];
+
+    static {
+        reserve(Lexer.KEYWORDS, Token.KEYWORD);
+        reserve(Lexer.DATATYPE, Token.DATATYPE);
+        reserve(Lexer.BOOLEAN_VALUES, Token.BOOLEAN);
+    }
+
+    private Keywords() {}
+
+    // Token type of input[start, end): KEYWORD, DATATYPE, BOOLEAN or IDENTIFIER.
+    static int classify(CharSequence input, int start, int end) {
+        int bucket = bucket(end - start, input.charAt(start));
+        if (bucket < 0 || bucket >= words.length || words[bucket] == null) {
+            return Token.IDENTIFIER;
+        }
+        char[][] candidates = words[bucket];
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(candidates[i], input, start)) {
+                return types[bucket][i];
+            }
+        }
+        return Token.IDENTIFIER;
+    }
+
+    private static void reserve(Set<String> reserved, int type) {
+        for (String word : reserved) {
+            int bucket = bucket(word.length(), word.charAt(0));
+            if (bucket < 0) {
+                throw new IllegalStateException("Reserved words must start with a lowercase letter: " + word);
+            }
+            if (bucket >= words.length) {
+                words = Arrays.copyOf(words, bucket + 1);
+                types = Arrays.copyOf(types, bucket + 1);
+            }
+            int count = words[bucket] == null ? 0 : words[bucket].length;
+            words[bucket] = count == 0 ? new char[1][] : Arrays.copyOf(words[bucket], count + 1);
+            types[bucket] = count == 0 ? new int[1] : Arrays.copyOf(types[bucket], count + 1);
+            words[bucket][count] = word.toCharArray();
+            types[bucket][count] = type;
+        }
+    }
+
+    private static int bucket(int length, char first) {
+        if (first < 'a' || first > 'z') return -1;
+        return length * LETTERS + (first - 'a');
+    }
+
+    // The bucket already fixes the length.
+    private static boolean matches(char[] word, CharSequence input, int start) {
+        for (int i = 0; i < word.length; i++) {
+            if (word[i] != input.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
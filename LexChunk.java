@@ -0,0 +1,78 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// What Lexer.lexChunk produces: tokens lexed from an arbitrary position, with state ids
+// counted from zero and identifier scopes unset, plus what is needed to place them in
+// the whole stream. For every step starting within `window` chars of `from` it keeps
+// the start, the state counter and the token count before it. Braces are kept as
+// token index << 1 | open.
+final class LexChunk {
+    final List<Token> tokens = new ArrayList<>();
+    final int from;
+    private final int window;
+    private int[] steps = new int[48];
+    private int stepCount;
+    private int[] braces = new int[16];
+    private int braceCount;
+    private int end;
+    private int states;
+
+    LexChunk(int from, int window) {
+        this.from = from;
+        this.window = window;
+    }
+
+    void step(int position, int stateCounter) {
+        if (position - from >= window) return;
+        if (stepCount * 3 == steps.length) {
+            steps = Arrays.copyOf(steps, steps.length * 2);
+        }
+        steps[stepCount * 3] = position;
+        steps[stepCount * 3 + 1] = stateCounter;
+        steps[stepCount * 3 + 2] = tokens.size();
+        stepCount++;
+    }
+
+    void brace(boolean open) {
+        if (braceCount == braces.length) {
+            braces = Arrays.copyOf(braces, braceCount * 2);
+        }
+        braces[braceCount++] = (tokens.size() - 1) << 1 | (open ? 1 : 0);
+    }
+
+    void end(int position, int stateCounter) {
+        end = position;
+        states = stateCounter;
+    }
+
+    int end() { return end; }
+    int states() { return states; }
+    int stepCount() { return stepCount; }
+    int stepStart(int step) { return steps[step * 3]; }
+    int stepStates(int step) { return steps[step * 3 + 1]; }
+    int stepTokens(int step) { return steps[step * 3 + 2]; }
+    int braceCount() { return braceCount; }
+    int braceToken(int brace) { return braces[brace] >> 1; }
+    boolean braceOpens(int brace) { return (braces[brace] & 1) != 0; }
+
+    // Index of the recorded step starting at position, or -1.
+    int stepAt(int position) {
+        int low = 0;
+        int high = stepCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int start = steps[middle * 3];
+            if (start < position) {
+                low = middle + 1;
+            } else if (start > position) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
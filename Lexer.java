@@ -1,18 +1,45 @@
 package example;
 
 import java.util.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 class Lexer {
-    private String input;
+    enum Engine { DISPATCH, TABLE }
+    enum Trace { NONE, COMPACT }
+
+    // Bump whenever a change alters the tokens, traces or diagnostics for some input, so
+    // build cache entries from older lexers are no longer used.
+    static final int VERSION = 3;
+
+    private CharSequence input;
+    private final SourceWindow window;
     private int position;
     private int length;
     private int stateCounter;
-    private Stack<Set<String>> scopeStack;
-    private Set<String> globalVariables;
-    private int lineNumber;
-    private int charPosition;
+    private int scopeDepth;
+    private final Engine engine;
+    private final boolean tracing;
+    private char[] pathSymbols;
+    private int pathLength;
+    private int pathStart;
+    private boolean pathFinal;
+    private boolean pathLinked;
+    private LexChunk chunk;
+    private Diagnostics diagnostics;
+    private LineIndex lines;
+    // A window forgets what it has read, so over one lines are counted as its text is
+    // dropped instead: countedLine is the line countedTo is on, which starts at
+    // countedLineStart. A block comment whose start is dropped before it ends has the
+    // start's line and column kept in case it turns out to be unterminated.
+    private int countedTo;
+    private int countedLine = 1;
+    private int countedLineStart;
+    private int commentStart = -1;
+    private int commentLine;
+    private int commentColumn;
 
     public static final Set<String> KEYWORDS = Set.of("read", "write", "if", "else", "loop", "end");
     public static final Set<String> DATATYPE = Set.of("num", "bool", "char", "dec");
@@ -20,126 +47,578 @@ class Lexer {
     public static final Set<String> OPERATORS = Set.of("=", "+", "-", "*", "/", "%", "^");
     public static final Set<Character> PUNCTUATORS = Set.of('(', ')', '{', '}', ';', ',');
     
-    public Lexer(String input) {
-        this.input = input;
+    public Lexer(CharSequence input) {
+        this(input, Engine.DISPATCH);
+    }
+
+    public Lexer(CharSequence input, Engine engine) {
+        this(input, engine, Trace.COMPACT);
+    }
+
+    public Lexer(CharSequence input, Engine engine, Trace trace) {
+        this(input, null, engine, trace);
+    }
+
+    // Streams from the reader through a buffer of bufferSize chars. Streaming always
+    // uses the table engine.
+    public Lexer(Reader reader, int bufferSize, Trace trace) {
+        this(null, new SourceWindow(reader, bufferSize), Engine.TABLE, trace);
+    }
+
+    public static Lexer fromChannel(ReadableByteChannel channel, int bufferSize, Trace trace) {
+        return new Lexer(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), bufferSize, trace);
+    }
+
+    private Lexer(CharSequence input, SourceWindow window, Engine engine, Trace trace) {
+        this.input = window != null ? window : input;
+        this.window = window;
         this.position = 0;
-        this.length = input.length();
+        this.length = this.input.length();
         this.stateCounter = 0;
-        this.scopeStack = new Stack<>();
-        this.globalVariables = new HashSet<>();
-        scopeStack.push(new HashSet<>());
-        this.lineNumber = 1;
-        charPosition=0;
+        this.scopeDepth = 0;
+        this.engine = engine;
+        this.tracing = trace == Trace.COMPACT;
+        this.pathSymbols = new char[16];
+    }
+
+    // Recovery mode: problems that would otherwise throw are reported to diagnostics
+    // instead, the offending text becomes an ERROR token, and lexing carries on.
+    public Lexer recover(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
+    // Where the lines of the input start, for turning token offsets into lines and
+    // columns. It is only built when first asked for, so lexing that reports nothing
+    // never scans for lines. A streaming Lexer has no index, since its text is gone.
+    LineIndex lines() {
+        if (window != null) throw new IllegalStateException("No line index over a stream");
+        if (lines == null) lines = LineIndex.of(input);
+        return lines;
     }
 
     public List<Token> tokenize() {
-        int scopeDepth = 0;
         List<Token> tokens = new ArrayList<>();
-        while (position < length) {
-            char currentChar = input.charAt(position);
-            List<State> statePath = new ArrayList<>();
-            State initialState = new State(stateCounter++, false, currentChar);
-            statePath.add(initialState);
-
-            if (currentChar == '\n') {
-                lineNumber++;    
-                charPosition = 0;
+        tokenize(tokens);
+        return tokens;
+    }
+
+    // Lexes the whole input into tokens, e.g. a TokenBuffer.
+    public void tokenize(List<Token> tokens) {
+        while (hasInput()) {
+            step(tokens);
+        }
+        tokens.add(new Token(Token.EOF, "EOF", null, "Global", length));
+    }
+
+    // Pull-based access: lexes only as far as needed for the next token. The last
+    // token returned is EOF, as with tokenize().
+    public Iterator<Token> tokens() {
+        return new Iterator<>() {
+            private final List<Token> pending = new ArrayList<>();
+            private int next = 0;
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                while (next == pending.size() && !done) {
+                    pending.clear();
+                    next = 0;
+                    if (hasInput()) {
+                        step(pending);
+                    } else {
+                        pending.add(new Token(Token.EOF, "EOF", null, "Global", length));
+                        done = true;
+                    }
+                }
+                return next < pending.size();
             }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pending.get(next++);
+            }
+        };
+    }
+
+    // Lexes steps into the chunk until one ends at or past `to`, starting at chunk.from
+    // and continuing from there on later calls. State ids count from zero and scopes are
+    // left unset, since neither is known until the chunk is placed in the whole stream.
+    void lexChunk(LexChunk chunk, int to) {
+        if (this.chunk != chunk) {
+            this.chunk = chunk;
+            position = chunk.from;
+        }
+        while (position < to) {
+            chunk.step(position, stateCounter);
+            step(chunk.tokens);
+        }
+        chunk.end(position, stateCounter);
+    }
+
+    private boolean hasInput() {
+        return position < length || refill(position);
+    }
+
+    private void step(List<Token> tokens) {
+        if (engine == Engine.TABLE) {
+            tableStep(tokens);
+        } else {
+            dispatchStep(tokens);
+        }
+    }
+
+    private boolean refill(int keepFrom) {
+        if (window == null) return false;
+        countLines(keepFrom);
+        if (!window.refill(keepFrom)) return false;
+        length = window.length();
+        return true;
+    }
+
+    private void dispatchStep(List<Token> tokens) {
+        char currentChar = input.charAt(position);
+        startPath(currentChar);
+
+        if (currentChar == '{') {
+        	tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), takePath(), "Global", position));
+            openScope();
+            position++;
+            return;
+        }
+        if (currentChar == '}') {
+        	tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), takePath(), "Global", position));
+            closeScope(position);
+            position++;
+            return;
+        }
+
+        if (Character.isWhitespace(currentChar)) { position++; return; }
+        if (Character.isDigit(currentChar)) { scanNumber(tokens); return; }
+        if (currentChar == '\'') {
+            int start = position;
+            Token character = scanCharacter();
+            if (character == null && diagnostics != null) {
+                malformedCharacter(start);
+                character = slice(Token.ERROR, start, position, "Global");
+            }
+            tokens.add(character);
+            return;
+        }
+        if (currentChar == '"') { tokens.add(scanString()); return; }
+        
+        if (Character.isLetter(currentChar)) {
+            int start = position;
+    
+            boolean hasUppercase = Character.isUpperCase(currentChar);
             
-            if (currentChar == '{') {
-            	tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), statePath));
-                scopeDepth++;
-                scopeStack.push(new HashSet<>());
+            while (position < length && Character.isLetterOrDigit(input.charAt(position))) {
+                char transitionChar = input.charAt(position);
+                if (Character.isUpperCase(transitionChar)) {
+                    hasUppercase = true;
+                }
+                pathRun(transitionChar);
                 position++;
-                charPosition++;
-                continue;
             }
-            if (currentChar == '}') {
-            	tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), statePath));
-                scopeDepth = Math.max(0, scopeDepth - 1);
-                scopeStack.pop();
-                position++;
-                charPosition++;
-                continue;
+    
+            if (hasUppercase) {
+                if (diagnostics == null) {
+                    throw error(start, "Uppercase word '" + text(start, position) + "'");
+                }
+                uppercaseWord(start, position);
+                tokens.add(slice(Token.ERROR, start, position, "Global"));
+                return;
             }
 
-            if (Character.isWhitespace(currentChar)) { position++;charPosition++; continue; }
-            if (Character.isDigit(currentChar)) { tokens.add(scanNumber(statePath)); continue; }
-            if (currentChar == '\'') { tokens.add(scanCharacter(statePath)); continue; }
-            if (currentChar == '"') { tokens.add(scanString(statePath)); continue; }
-            
-            if (Character.isLetter(currentChar)) {
-                int start = position;
-                //statePath.add(new State(stateCounter++, false, currentChar));
-        
-                boolean hasUppercase = Character.isUpperCase(currentChar);
-                
-                while (position < input.length() && Character.isLetterOrDigit(input.charAt(position))) {
-                    char transitionChar = input.charAt(position);
-                    if (Character.isUpperCase(transitionChar)) {
-                        hasUppercase = true;
-                    }
-                    if (statePath.isEmpty() || statePath.get(statePath.size() - 1).transitionChar != transitionChar) {
-                        statePath.add(new State(stateCounter++, false, transitionChar));
-                    }
-                    position++;
+            String function = matches(start, position, "input") ? "input" : matches(start, position, "output") ? "output" : null;
+            if (function != null && position < length && input.charAt(position) == '(') {
+                Token ioToken = processIOFunction(function, start);
+                if (ioToken != null) {
+                    tokens.add(ioToken);
                 }
+                return;
+            }
+
+            tokens.add(slice(Token.IDENTIFIER, start, position, identifierScope()));
+            return;
+        }
+
+
+        
+        if (currentChar == '/' && peekNext() == '/') { scanComment(); return; }
+        if (currentChar == '/' && peekNext() == '*') { scanMultilineComment(); return; }
+        
         
-                String word = input.substring(start, position);
 
-                if (hasUppercase) {
-                    throw new IllegalArgumentException("Error: At line number: " + lineNumber +
-                        " on index: " + position + " Uppercase word '" + word + "'");
-                }
+    
+        
+        if (OPERATORS.contains(String.valueOf(currentChar))) {
+            tokens.add(new Token(Token.OPERATOR, String.valueOf(currentChar), takePath(), "Global", position));
+            position++; return;
+        }
+        if (Character.isLowerCase(currentChar)) { 
+            tokens.add(scanIdentifierOrKeyword()); return;
+         }
+        if (PUNCTUATORS.contains(currentChar)) {
+            tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), takePath(), "Global", position));
+            position++; return;
+        }
+        position++;
+    }
 
-                if ((word.equals("input") || word.equals("output")) && position < input.length() && input.charAt(position) == '(') {
-                    Token ioToken = processIOFunction(word);
-                    if (ioToken != null) {
-                        tokens.add(ioToken);
-                    }
-                    continue;
-                }
+    private void openScope() {
+        if (chunk != null) {
+            chunk.brace(true);
+            return;
+        }
+        scopeDepth++;
+    }
 
-                String scope = (scopeDepth == 0) ? "Global" : "Local";
+    private void closeScope(int at) {
+        if (chunk != null) {
+            chunk.brace(false);
+            return;
+        }
+        if (diagnostics != null && scopeDepth == 0) {
+            report(at, Diagnostic.Kind.UNMATCHED_BRACE, "'}' without a matching '{'");
+            return;
+        }
+        scopeDepth = Math.max(0, scopeDepth - 1);
+    }
 
-                if (position < input.length() && input.charAt(position) == '=') {
-                    if (scopeDepth == 0) {
-                        globalVariables.add(word);
-                    } else {
-                        scopeStack.peek().add(word);
-                    }
-                }
+    // Which names are declared where is SymbolTable's business; tokens only note the
+    // brace depth they sit at.
+    private String identifierScope() {
+        if (chunk != null) {
+            return null;
+        }
+        return scopeDepth == 0 ? "Global" : "Local";
+    }
+
+    // Tokens over a stable input only record where their text is. The streaming window
+    // reuses its buffer, so those tokens copy their text right away.
+    private Token slice(int type, int start, int end, String scope) {
+        if (window != null) {
+            return new Token(type, text(start, end), takePath(), scope, start);
+        }
+        return new Token(type, input, start, end - start, takePath(), scope);
+    }
+
+    // Adds the token for [start, end), with value in place of its text if given. A
+    // TokenBuffer takes the lexeme and path as they are, without a Token in between.
+    private void add(List<Token> tokens, int type, int start, int end, String value, String scope) {
+        add(tokens, type, start, end, value, scope, FixedPoint.OVERFLOW);
+    }
 
-                tokens.add(new Token(Token.IDENTIFIER, word, statePath, scope));
+    // As above for a numeric literal with its fixed-point value.
+    private void add(List<Token> tokens, int type, int start, int end, String value, String scope, long fixed) {
+        if (tokens instanceof TokenBuffer) {
+            TokenBuffer buffer = (TokenBuffer) tokens;
+            buffer.add(type, input, start, end - start, value, scope);
+            if (tracing) buffer.trace(pathStart, pathSymbols, pathLength, pathFinal, pathLinked);
+            if (fixed >= 0) buffer.fixed(fixed);
+            return;
+        }
+        Token token = value != null ? new Token(type, value, takePath(), scope, start) : slice(type, start, end, scope);
+        token.setFixed(fixed);
+        tokens.add(token);
+    }
 
-                System.out.println("Variable: " + word + ", Scope Depth: " + scopeDepth);
-                continue;
+    // Runs the compiled LexerDfa with maximal munch, then builds the same tokens and
+    // state paths that the dispatch engine produces for the recognized lexeme.
+    private void tableStep(List<Token> tokens) {
+        final int[] table = LexerDfa.TABLE;
+        final byte[] classes = LexerDfa.CLASSES;
+        final int nonAscii = LexerDfa.NON_ASCII_CLASS;
+        final int acceptColumn = LexerDfa.ACCEPT_COLUMN;
+        int start = position;
+        int state = LexerDfa.START;
+        int kind = LexerDfa.NONE;
+        int end = start + 1;
+        int p = start;
+        while (p < length || refillToken(start, p, state)) {
+            char c = input.charAt(p);
+            int target = table[state + (c < 128 ? classes[c] : nonAscii)];
+            if (target < 0) break;
+            state = target;
+            p++;
+            if (table[state + acceptColumn] != LexerDfa.NONE) {
+                kind = table[state + acceptColumn];
+                end = p;
             }
+        }
+        if (p == length) {
+            if (table[state + LexerDfa.END_COLUMN] != LexerDfa.NONE) {
+                kind = table[state + LexerDfa.END_COLUMN];
+                end = p;
+            }
+        } else if (input.charAt(p) >= 128 && LexerDfa.continuesOutsideAscii(kind)) {
+            // The tables only model ASCII, so words and numbers running into other letters or
+            // digits, and anything starting with such a character, go through dispatch.
+            bufferLine(start);
+            dispatchStep(tokens);
+            return;
+        }
+        position = end;
+        emit(kind, start, end, tokens);
+    }
 
+    // Keeps the current token's text while reading more input. Comment bodies are never
+    // read back, so they are not retained.
+    private boolean refillToken(int start, int p, int state) {
+        if (window == null) return false;
+        int keepFrom = start;
+        if (LexerDfa.TABLE[state + LexerDfa.END_COLUMN] == LexerDfa.OPEN_BLOCK_COMMENT
+                || LexerDfa.TABLE[state + LexerDfa.ACCEPT_COLUMN] == LexerDfa.LINE_COMMENT) {
+            keepFrom = p;
+            if (commentStart != start && LexerDfa.TABLE[state + LexerDfa.END_COLUMN] == LexerDfa.OPEN_BLOCK_COMMENT) {
+                commentLine = line(start);
+                commentColumn = column(start);
+                commentStart = start;
+            }
+        }
+        return refill(keepFrom);
+    }
 
-            
-            if (currentChar == '/' && peekNext() == '/') { scanComment(); continue; }
-            if (currentChar == '/' && peekNext() == '*') { scanMultilineComment(); continue; }
-            
-            
+    // dispatchStep treats the end of the buffer as the end of input. The tokens it takes
+    // over from the table engine never span lines, so buffering the rest of the line is enough.
+    private void bufferLine(int start) {
+        int scanned = start;
+        do {
+            for (; scanned < length; scanned++) {
+                if (input.charAt(scanned) == '\n') return;
+            }
+        } while (refill(start));
+    }
 
-        
-            
-            if (OPERATORS.contains(String.valueOf(currentChar))) {
-                tokens.add(new Token(Token.OPERATOR, String.valueOf(currentChar), statePath));
-                position++; continue;
+    private void emit(int kind, int start, int end, List<Token> tokens) {
+        switch (kind) {
+            case LexerDfa.NONE -> stateCounter++;
+            case LexerDfa.WHITESPACE -> stateCounter += end - start;
+            case LexerDfa.LINE_COMMENT, LexerDfa.BLOCK_COMMENT -> stateCounter++;
+            case LexerDfa.OPEN_BLOCK_COMMENT -> {
+                stateCounter++;
+                if (diagnostics == null) throw unterminatedCommentError(start);
+                unterminatedComment(start);
+            }
+            case LexerDfa.OPEN_BRACE, LexerDfa.CLOSE_BRACE -> {
+                startPath(input.charAt(start));
+                add(tokens, Token.PUNCTUATOR, start, end, null, "Global");
+                if (kind == LexerDfa.OPEN_BRACE) {
+                    openScope();
+                } else {
+                    closeScope(start);
+                }
             }
-            if (Character.isLowerCase(currentChar)) { 
-                tokens.add(scanIdentifierOrKeyword(statePath)); continue;
-             }
-            if (PUNCTUATORS.contains(currentChar)) {
-                tokens.add(new Token(Token.PUNCTUATOR, String.valueOf(currentChar), statePath));
-                position++; continue;
+            case LexerDfa.PUNCTUATOR, LexerDfa.OPERATOR -> {
+                startPath(input.charAt(start));
+                add(tokens, kind == LexerDfa.PUNCTUATOR ? Token.PUNCTUATOR : Token.OPERATOR, start, end, null, "Global");
             }
-            position++;
+            case LexerDfa.INTEGER, LexerDfa.DECIMAL -> {
+                startPath(input.charAt(start));
+                pathRuns(start, end);
+                pathFinal(' ');
+                number(tokens, kind == LexerDfa.DECIMAL, start, end);
+            }
+            case LexerDfa.CHARACTER -> {
+                char value = input.charAt(start + 1);
+                startPath('\'');
+                pathState('\'');
+                pathState(value);
+                pathFinal('\'');
+                pathLinked = true;
+                add(tokens, Token.CHARACTER, start + 1, start + 2, null, "Global");
+            }
+            case LexerDfa.BAD_CHARACTER -> {
+                // scanCharacter hands back null here and the dispatch engine adds it as is.
+                if (diagnostics == null) {
+                    stateCounter += 2;
+                    tokens.add(null);
+                } else {
+                    startPath('\'');
+                    pathState('\'');
+                    malformedCharacter(start);
+                    add(tokens, Token.ERROR, start, end, null, "Global");
+                }
+            }
+            case LexerDfa.STRING, LexerDfa.OPEN_STRING -> {
+                int contentEnd = kind == LexerDfa.STRING ? end - 1 : end;
+                startPath('"');
+                pathState('"');
+                pathRuns(start + 1, contentEnd);
+                pathFinal('"');
+                if (kind == LexerDfa.OPEN_STRING && diagnostics != null) unterminatedString(start);
+                add(tokens, Token.STRING, start + 1, contentEnd, null, "Global");
+            }
+            case LexerDfa.IDENTIFIER, LexerDfa.KEYWORD, LexerDfa.DATATYPE, LexerDfa.BOOLEAN -> {
+                // The dispatch engine's letter branch reports reserved words as identifiers as well.
+                startPath(input.charAt(start));
+                pathRuns(start, end);
+                add(tokens, Token.IDENTIFIER, start, end, null, identifierScope());
+            }
+            case LexerDfa.UPPERCASE_WORD -> {
+                if (diagnostics == null) {
+                    throw error(start, "Uppercase word '" + text(start, end) + "'");
+                }
+                startPath(input.charAt(start));
+                pathRuns(start, end);
+                uppercaseWord(start, end);
+                add(tokens, Token.ERROR, start, end, null, "Global");
+            }
+            case LexerDfa.INPUT, LexerDfa.OUTPUT, LexerDfa.OPEN_IO -> {
+                String functionType = input.charAt(start) == 'i' ? "input" : "output";
+                int open = start + functionType.length();
+                startPath(input.charAt(start));
+                pathRuns(start, open);
+                if (kind == LexerDfa.OPEN_IO) {
+                    if (diagnostics == null) {
+                        throw error(start, "Missing closing ')' for " + functionType);
+                    }
+                    int lineEnd = lineEnd(open + 1);
+                    startPath('(');
+                    pathRuns(open + 1, lineEnd);
+                    missingParen(start, functionType);
+                    add(tokens, Token.ERROR, start, lineEnd, null, "Global");
+                    position = lineEnd;
+                    return;
+                }
+                startPath('(');
+                pathRuns(open + 1, end - 1);
+                pathFinal(')');
+                String value = ioValue(functionType, text(open + 1, end - 1).trim());
+                if (value != null) {
+                    add(tokens, functionType.equals("input") ? Token.INPUT : Token.OUTPUT, start, end, value, "Global");
+                }
+            }
+            default -> throw new IllegalStateException("Unknown lexer table kind: " + kind);
         }
-        tokens.add(new Token(Token.EOF, "EOF", new ArrayList<>()));
-        return tokens;
+    }
+
+    private void report(int offset, Diagnostic.Kind kind, String message) {
+        diagnostics.report(line(offset), column(offset), offset, kind, message);
+    }
+
+    // What strict mode throws for a problem at offset.
+    private IllegalArgumentException error(int offset, String message) {
+        return new IllegalArgumentException("Error: At line number: " + line(offset) +
+            " on index: " + column(offset) + " " + message);
+    }
+
+    private IllegalArgumentException unterminatedCommentError(int start) {
+        return new IllegalArgumentException("Error: MultiComment didn't completed at line: " + line(start) +
+            " on index: " + column(start));
+    }
+
+    // Lines and columns of the offsets problems are found at, which come in source order.
+    private int line(int offset) {
+        if (window == null) return lines().line(offset);
+        if (offset == commentStart) return commentLine;
+        countLines(offset);
+        return countedLine;
+    }
+
+    private int column(int offset) {
+        if (window == null) return lines().column(offset);
+        if (offset == commentStart) return commentColumn;
+        countLines(offset);
+        return offset - countedLineStart + 1;
+    }
+
+    private void countLines(int to) {
+        for (; countedTo < to; countedTo++) {
+            if (input.charAt(countedTo) == '\n') {
+                countedLine++;
+                countedLineStart = countedTo + 1;
+            }
+        }
+    }
+
+    private void uppercaseWord(int start, int end) {
+        report(start, Diagnostic.Kind.UPPERCASE_IDENTIFIER, "Uppercase word '" + text(start, end) + "'");
+    }
+
+    private void unterminatedComment(int start) {
+        report(start, Diagnostic.Kind.UNTERMINATED_COMMENT, "Comment is not closed before the end of input");
+    }
+
+    private void unterminatedString(int start) {
+        report(start, Diagnostic.Kind.UNTERMINATED_STRING, "String is not closed before the end of input");
+    }
+
+    private void missingParen(int start, String functionType) {
+        report(start, Diagnostic.Kind.MISSING_CLOSING_PAREN, "Missing closing ')' for " + functionType);
+    }
+
+    private void malformedNumber(int start, int end) {
+        report(start, Diagnostic.Kind.MALFORMED_NUMBER, "Number '" + text(start, end) + "' has more than one '.'");
+    }
+
+    private void malformedCharacter(int start) {
+        report(start, Diagnostic.Kind.MALFORMED_CHARACTER, "Character literal must be one character between quotes");
+    }
+
+    // Where lexing resumes after an unclosed call: the next newline, or the end of input.
+    private int lineEnd(int from) {
+        int end = from;
+        while (end < length && input.charAt(end) != '\n') end++;
+        return end;
+    }
+
+    private String text(int from, int to) {
+        return input.subSequence(from, to).toString();
+    }
+
+    private boolean matches(int from, int to, String word) {
+        if (to - from != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (input.charAt(from + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // State ids are handed out consecutively, so a token's path is kept as its first id
+    // and one symbol per state until takePath() packs it into a StateTrace.
+    private void startPath(char symbol) {
+        pathStart = stateCounter;
+        pathLength = 0;
+        pathFinal = false;
+        pathLinked = false;
+        pathState(symbol);
+    }
+
+    private void pathState(char symbol) {
+        if (!tracing) return;
+        if (pathLength == pathSymbols.length) {
+            pathSymbols = Arrays.copyOf(pathSymbols, pathLength * 2);
+        }
+        pathSymbols[pathLength++] = symbol;
+        stateCounter++;
+    }
+
+    private void pathRun(char symbol) {
+        if (tracing && pathSymbols[pathLength - 1] != symbol) {
+            pathState(symbol);
+        }
+    }
+
+    private void pathRuns(int from, int to) {
+        if (!tracing) return;
+        for (int i = from; i < to; i++) {
+            pathRun(input.charAt(i));
+        }
+    }
+
+    private void pathFinal(char symbol) {
+        pathState(symbol);
+        pathFinal = true;
+    }
+
+    private StateTrace takePath() {
+        if (!tracing) return null;
+        return new StateTrace(pathStart, Arrays.copyOf(pathSymbols, pathLength), pathFinal, pathLinked);
     }
 
     private char peekNext() {
@@ -149,24 +628,24 @@ class Lexer {
     private void scanComment() {
         while (position < length && input.charAt(position) != '\n') {
             position++;
-            charPosition++;
         }
     }
 
 	private void scanMultilineComment() {
+		int start = position;
 		position += 2;
 		
 		while (position < length - 1 && !(input.charAt(position) == '*' && input.charAt(position + 1) == '/')) {
-            if (input.charAt(position) == '\n') {
-                lineNumber++;
-                charPosition = 0;
-            }
-            charPosition++;
 			position++;
 		}
 	
 		if (position >= length - 1) {
-			throw new IllegalArgumentException("Error: MultiComment didn't completed at line: "+lineNumber +" on index: " + charPosition);
+			if (diagnostics == null) {
+				throw unterminatedCommentError(start);
+			}
+			unterminatedComment(start);
+			position = length;
+			return;
 		}
 	
 		position += 2;
@@ -174,7 +653,7 @@ class Lexer {
 
 
 
-    private Token scanNumber(List<State> statePath) {
+    private void scanNumber(List<Token> tokens) {
         int start = position;
         boolean isDecimal = false;
 
@@ -183,34 +662,37 @@ class Lexer {
         	if (input.charAt(position) == '.') {
                 isDecimal = true;
             }
-            if (statePath.isEmpty() || statePath.get(statePath.size() - 1).transitionChar != transitionChar) {
-                statePath.add(new State(stateCounter++, false, transitionChar));
-            }
+            pathRun(transitionChar);
             position++;
-            charPosition++;
         }
 
-        statePath.add(new State(stateCounter++, true, ' '));
+        pathFinal(' ');
+        number(tokens, isDecimal, start, position);
+    }
 
-        String numberStr = input.substring(start, position);
-        if (isDecimal) {
-            try {
-                BigDecimal roundedValue = new BigDecimal(numberStr)
-                    .setScale(5, RoundingMode.HALF_UP);
-                numberStr = roundedValue.toPlainString();
-            } catch (NumberFormatException e) {
-                
+    // An integer or dec literal at [start, end), its path taken. Integers keep their text;
+    // dec values are rounded to FixedPoint.SCALE places. More than one '.' is an error.
+    private void number(List<Token> tokens, boolean isDecimal, int start, int end) {
+        long fixed = FixedPoint.parse(input, start, end);
+        if (fixed == FixedPoint.MALFORMED) {
+            if (diagnostics == null) {
+                throw error(start, "Malformed number '" + text(start, end) + "'");
             }
+            malformedNumber(start, end);
+            add(tokens, Token.ERROR, start, end, null, "Global");
+            return;
         }
-
-        return new Token(isDecimal ? Token.DECIMAL : Token.INTEGER, numberStr, statePath);
+        String value = null;
+        if (isDecimal) {
+            value = fixed >= 0 ? FixedPoint.format(fixed) : FixedPoint.decimal(text(start, end)).toPlainString();
+        }
+        add(tokens, isDecimal ? Token.DECIMAL : Token.INTEGER, start, end, value, "Global", fixed);
     }
 
 
-    private Token scanCharacter(List<State> statePath) {
+    private Token scanCharacter() {
         
-        State startState = new State(stateCounter++, false, input.charAt(position++));
-        statePath.add(startState);
+        pathState(input.charAt(position++));
 
         if (position < length && input.charAt(position) == '\'') {
             return null;
@@ -218,20 +700,15 @@ class Lexer {
 
         if (position < length - 1 && input.charAt(position + 1) == '\'') {
             char value = input.charAt(position);
-            State charState = new State(stateCounter++, false, value);
-            statePath.add(charState);
+            pathState(value);
 
             position++;
-            charPosition++;
-            State finalState = new State(stateCounter++, true, '\'');
-            statePath.add(finalState);
+            pathFinal('\'');
             
             position++;
-            charPosition++;
-            startState.addTransition(value, charState);
-            charState.addTransition('\'', finalState);
+            pathLinked = true;
 
-            return new Token(Token.CHARACTER, String.valueOf(value), statePath);
+            return new Token(Token.CHARACTER, String.valueOf(value), takePath(), "Global", position - 2);
         }
 
         return null;
@@ -239,89 +716,97 @@ class Lexer {
 
 
 
-    private Token scanString(List<State> statePath) {
+    private Token scanString() {
         int start = position++;
-        statePath.add(new State(stateCounter++, false, '"'));
+        pathState('"');
         while (position < length && input.charAt(position) != '"') {
         	char transitionChar = input.charAt(position);
-            if (statePath.isEmpty() || statePath.get(statePath.size() - 1).transitionChar != transitionChar) {
-                statePath.add(new State(stateCounter++, false, transitionChar));
-            }
+            pathRun(transitionChar);
             position++;
-            charPosition++;
         }
-        statePath.add(new State(stateCounter++, true, '"'));
+        if (position >= length && diagnostics != null) unterminatedString(start);
+        pathFinal('"');
         position++;
-        charPosition++;
-        return new Token(Token.STRING, input.substring(start + 1, position - 1), statePath);
+        return new Token(Token.STRING, text(start + 1, position - 1), takePath(), "Global", start + 1);
     }
 
-   private Token scanIdentifierOrKeyword(List<State> statePath) {
+   private Token scanIdentifierOrKeyword() {
 		int start = position;
 		
 		while (position < length && Character.isLetter(input.charAt(position))) {
-			statePath.add(new State(stateCounter++, false, input.charAt(position)));
+			pathState(input.charAt(position));
 			position++;
-            charPosition++;
 		}
-		statePath.add(new State(stateCounter++, true, ' '));
+		pathFinal(' ');
 		
-		String value = input.substring(start, position);
+		int type = Keywords.classify(input, start, position);
 	
-		if (!KEYWORDS.contains(value) && !DATATYPE.contains(value)) {
-			if (!value.equals(value.toLowerCase())) {
-				throw new IllegalArgumentException("Error: At line number: " +lineNumber+" on index: "+charPosition+"Variable names cannot contain uppercase letters: " + value);
+		if (type != Token.KEYWORD && type != Token.DATATYPE) {
+			for (int i = start; i < position; i++) {
+				if (Character.toLowerCase(input.charAt(i)) != input.charAt(i)) {
+					throw error(start, "Variable names cannot contain uppercase letters: " + text(start, position));
+				}
 			}
 		}
 	
-		if (BOOLEAN_VALUES.contains(value)) {
-			return new Token(Token.BOOLEAN, value, statePath);
-		} else if (KEYWORDS.contains(value)) {
-			return new Token(Token.KEYWORD, value, statePath);
-		} else if (DATATYPE.contains(value)) {
-			return new Token(Token.DATATYPE, value, statePath);
+		if (type != Token.IDENTIFIER) {
+			return slice(type, start, position, "Global");
 		}
 	
 		return null;
 	}
 
     
-    private Token processIOFunction(String functionType) {
+    private Token processIOFunction(String functionType, int start) {
         
-        List<State> statePath = new ArrayList<>();
-        statePath.add(new State(stateCounter++, false, '('));
+        startPath('(');
 
         position++;
         int contentStart = position;
 
         while (position < length && input.charAt(position) != ')') {
             char transitionChar = input.charAt(position);
-            if (statePath.isEmpty() || statePath.get(statePath.size() - 1).transitionChar != transitionChar) {
-                statePath.add(new State(stateCounter++, false, transitionChar));
-            }
+            pathRun(transitionChar);
             position++;
         }
 
         if (position >= length) {
-            throw new IllegalArgumentException("Error: At line number: "+ lineNumber +" on index: "+ charPosition +" Missing closing ')' for " + functionType);
+            if (diagnostics == null) {
+                throw error(start, "Missing closing ')' for " + functionType);
+            }
+            // Give back the states of the run to the end of input and end the token at
+            // the end of its line instead, as the table engine does.
+            int lineEnd = lineEnd(contentStart);
+            stateCounter = pathStart;
+            startPath('(');
+            pathRuns(contentStart, lineEnd);
+            missingParen(start, functionType);
+            position = lineEnd;
+            return slice(Token.ERROR, start, lineEnd, "Global");
         }
 
-        statePath.add(new State(stateCounter++, true, ')'));
-        String content = input.substring(contentStart, position).trim();
+        pathFinal(')');
+        String content = text(contentStart, position).trim();
         position++;
 
-        if (functionType.equals("input")) {
-            if (!content.isEmpty()) {
-                return new Token(Token.INPUT, "input(" + content + ")", statePath);
-            } else {
-                return new Token(Token.INPUT, "input()", statePath);
-            }
-        } else if (functionType.equals("output")) {
-            if (!content.isEmpty()) {
-                return new Token(Token.OUTPUT, "output(" + content + ")", statePath);
-            }
+        return ioToken(functionType, content, takePath(), start);
+    }
+
+    private static Token ioToken(String functionType, String content, StateTrace trace, int start) {
+        String value = ioValue(functionType, content);
+        if (value == null) {
+            return null;
         }
+        return new Token(functionType.equals("input") ? Token.INPUT : Token.OUTPUT, value, trace, "Global", start);
+    }
 
+    // An empty output() produces no token.
+    private static String ioValue(String functionType, String content) {
+        if (functionType.equals("input")) {
+            return "input(" + content + ")";
+        } else if (functionType.equals("output") && !content.isEmpty()) {
+            return "output(" + content + ")";
+        }
         return null;
     }
 
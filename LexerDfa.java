@@ -0,0 +1,238 @@
+package example;
+
+import java.util.function.IntPredicate;
+
+// All token rules of the language compiled into one minimized DFA. Characters are
+// folded into equivalence classes, and each table row holds one column per class
+// followed by the accept kind and the end-of-input kind of that state. Row
+// offsets are premultiplied so the scanning loop needs no multiplication.
+final class LexerDfa {
+    public static final int NONE = Nfa.NO_KIND;
+    public static final int WHITESPACE = 1;
+    public static final int OPEN_BRACE = 2;
+    public static final int CLOSE_BRACE = 3;
+    public static final int PUNCTUATOR = 4;
+    public static final int OPERATOR = 5;
+    public static final int INTEGER = 6;
+    public static final int DECIMAL = 7;
+    public static final int CHARACTER = 8;
+    public static final int BAD_CHARACTER = 9;
+    public static final int STRING = 10;
+    public static final int OPEN_STRING = 11;
+    public static final int LINE_COMMENT = 12;
+    public static final int BLOCK_COMMENT = 13;
+    public static final int OPEN_BLOCK_COMMENT = 14;
+    public static final int IDENTIFIER = 15;
+    public static final int KEYWORD = 16;
+    public static final int DATATYPE = 17;
+    public static final int BOOLEAN = 18;
+    public static final int UPPERCASE_WORD = 19;
+    public static final int INPUT = 20;
+    public static final int OUTPUT = 21;
+    public static final int OPEN_IO = 22;
+
+    // Symbol used for every character outside ASCII.
+    private static final int NON_ASCII = 128;
+    private static final int SYMBOLS = 129;
+
+    private static final int RESERVED = 0;
+    private static final int RULE = 1;
+
+    public static final int START = 0;
+    public static final byte[] CLASSES = new byte[128];
+    public static final int NON_ASCII_CLASS;
+    public static final int ACCEPT_COLUMN;
+    public static final int END_COLUMN;
+    public static final int WIDTH;
+    public static final int[] TABLE;
+    public static final int STATES;
+
+    static {
+        Dfa dfa = Dfa.fromNfa(rules(), 0).minimize();
+
+        int[] classOf = new int[SYMBOLS];
+        int[] representative = new int[SYMBOLS];
+        int classes = 0;
+        for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+            int found = -1;
+            for (int k = 0; k < classes && found < 0; k++) {
+                if (sameColumn(dfa, representative[k], symbol)) {
+                    found = k;
+                }
+            }
+            if (found < 0) {
+                found = classes;
+                representative[classes++] = symbol;
+            }
+            classOf[symbol] = found;
+        }
+
+        WIDTH = classes + 2;
+        ACCEPT_COLUMN = classes;
+        END_COLUMN = classes + 1;
+        STATES = dfa.size();
+        TABLE = new int[STATES * WIDTH];
+        for (int s = 0; s < STATES; s++) {
+            for (int k = 0; k < classes; k++) {
+                int target = dfa.next(s, representative[k]);
+                TABLE[s * WIDTH + k] = target == Dfa.DEAD ? Dfa.DEAD : target * WIDTH;
+            }
+            TABLE[s * WIDTH + ACCEPT_COLUMN] = dfa.accept(s);
+            TABLE[s * WIDTH + END_COLUMN] = dfa.endKind(s);
+        }
+        for (int c = 0; c < 128; c++) {
+            CLASSES[c] = (byte) classOf[c];
+        }
+        NON_ASCII_CLASS = classOf[NON_ASCII];
+    }
+
+    private LexerDfa() {}
+
+    // Kinds the dispatch engine may extend over non-ASCII letters and digits. NONE covers
+    // lexemes that start outside ASCII.
+    public static boolean continuesOutsideAscii(int kind) {
+        return switch (kind) {
+            case NONE, INTEGER, DECIMAL, IDENTIFIER, KEYWORD, DATATYPE, BOOLEAN, UPPERCASE_WORD -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean sameColumn(Dfa dfa, int a, int b) {
+        for (int s = 0; s < dfa.size(); s++) {
+            if (dfa.next(s, a) != dfa.next(s, b)) return false;
+        }
+        return true;
+    }
+
+    private static Nfa rules() {
+        Nfa nfa = new Nfa(SYMBOLS);
+        int start = nfa.addState();
+
+        IntPredicate whitespace = c -> c < 128 && Character.isWhitespace(c);
+        IntPredicate digit = c -> c < 128 && Character.isDigit(c);
+        IntPredicate lower = c -> c < 128 && Character.isLetter(c) && !Character.isUpperCase(c);
+        IntPredicate upper = c -> c < 128 && Character.isLetter(c) && Character.isUpperCase(c);
+        IntPredicate lowerOrDigit = lower.or(digit);
+        IntPredicate letterOrDigit = c -> c < 128 && Character.isLetterOrDigit(c);
+
+        int ws = rule(nfa, start);
+        int wsRun = nfa.addState();
+        edge(nfa, ws, whitespace, wsRun);
+        edge(nfa, wsRun, whitespace, wsRun);
+        nfa.setAccept(wsRun, WHITESPACE, RULE);
+
+        single(nfa, start, c -> c == '{', OPEN_BRACE);
+        single(nfa, start, c -> c == '}', CLOSE_BRACE);
+        single(nfa, start, c -> c == '(' || c == ')' || c == ';' || c == ',', PUNCTUATOR);
+        single(nfa, start, c -> c < 128 && Lexer.OPERATORS.contains(String.valueOf((char) c)), OPERATOR);
+
+        int number = rule(nfa, start);
+        int integer = nfa.addState();
+        int decimal = nfa.addState();
+        edge(nfa, number, digit, integer);
+        edge(nfa, integer, digit, integer);
+        edge(nfa, integer, c -> c == '.', decimal);
+        edge(nfa, decimal, digit.or(c -> c == '.'), decimal);
+        nfa.setAccept(integer, INTEGER, RULE);
+        nfa.setAccept(decimal, DECIMAL, RULE);
+
+        int character = rule(nfa, start);
+        int quote = nfa.addState();
+        int value = nfa.addState();
+        int closed = nfa.addState();
+        edge(nfa, character, c -> c == '\'', quote);
+        edge(nfa, quote, c -> c != '\'', value);
+        edge(nfa, value, c -> c == '\'', closed);
+        nfa.setAccept(quote, BAD_CHARACTER, RULE);
+        nfa.setAccept(closed, CHARACTER, RULE);
+
+        int string = rule(nfa, start);
+        int body = nfa.addState();
+        int end = nfa.addState();
+        edge(nfa, string, c -> c == '"', body);
+        edge(nfa, body, c -> c != '"', body);
+        edge(nfa, body, c -> c == '"', end);
+        nfa.setEndKind(body, OPEN_STRING, RULE);
+        nfa.setAccept(end, STRING, RULE);
+
+        int line = literal(nfa, rule(nfa, start), "//");
+        edge(nfa, line, c -> c != '\n', line);
+        nfa.setAccept(line, LINE_COMMENT, RULE);
+
+        int block = literal(nfa, rule(nfa, start), "/*");
+        int star = nfa.addState();
+        int blockEnd = nfa.addState();
+        edge(nfa, block, c -> c != '*', block);
+        edge(nfa, block, c -> c == '*', star);
+        edge(nfa, star, c -> c == '*', star);
+        edge(nfa, star, c -> c != '*' && c != '/', block);
+        edge(nfa, star, c -> c == '/', blockEnd);
+        nfa.setEndKind(block, OPEN_BLOCK_COMMENT, RULE);
+        nfa.setEndKind(star, OPEN_BLOCK_COMMENT, RULE);
+        nfa.setAccept(blockEnd, BLOCK_COMMENT, RULE);
+
+        int word = rule(nfa, start);
+        int identifier = nfa.addState();
+        int uppercase = nfa.addState();
+        edge(nfa, word, lower, identifier);
+        edge(nfa, identifier, lowerOrDigit, identifier);
+        edge(nfa, word, upper, uppercase);
+        edge(nfa, identifier, upper, uppercase);
+        edge(nfa, uppercase, letterOrDigit, uppercase);
+        nfa.setAccept(identifier, IDENTIFIER, RULE);
+        nfa.setAccept(uppercase, UPPERCASE_WORD, RULE);
+
+        for (String keyword : Lexer.KEYWORDS) reserved(nfa, start, keyword, KEYWORD);
+        for (String datatype : Lexer.DATATYPE) reserved(nfa, start, datatype, DATATYPE);
+        for (String bool : Lexer.BOOLEAN_VALUES) reserved(nfa, start, bool, BOOLEAN);
+
+        io(nfa, start, "input(", INPUT);
+        io(nfa, start, "output(", OUTPUT);
+        return nfa;
+    }
+
+    private static int rule(Nfa nfa, int start) {
+        int state = nfa.addState();
+        nfa.addEpsilon(start, state);
+        return state;
+    }
+
+    private static void edge(Nfa nfa, int from, IntPredicate chars, int to) {
+        for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+            if (chars.test(symbol)) {
+                nfa.addEdge(from, symbol, to);
+            }
+        }
+    }
+
+    private static int literal(Nfa nfa, int from, String text) {
+        int state = from;
+        for (int i = 0; i < text.length(); i++) {
+            int next = nfa.addState();
+            char expected = text.charAt(i);
+            edge(nfa, state, c -> c == expected, next);
+            state = next;
+        }
+        return state;
+    }
+
+    private static void single(Nfa nfa, int start, IntPredicate chars, int kind) {
+        int from = rule(nfa, start);
+        int to = nfa.addState();
+        edge(nfa, from, chars, to);
+        nfa.setAccept(to, kind, RULE);
+    }
+
+    private static void reserved(Nfa nfa, int start, String word, int kind) {
+        nfa.setAccept(literal(nfa, rule(nfa, start), word), kind, RESERVED);
+    }
+
+    private static void io(Nfa nfa, int start, String opening, int kind) {
+        int content = literal(nfa, rule(nfa, start), opening);
+        int end = nfa.addState();
+        edge(nfa, content, c -> c != ')', content);
+        edge(nfa, content, c -> c == ')', end);
+        nfa.setEndKind(content, OPEN_IO, RULE);
+        nfa.setAccept(end, kind, RULE);
+    }
+}
@@ -0,0 +1,74 @@
+package example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Where each line of a source starts, found in one pass over the text, so an offset
+// maps to its line and column by binary search. Lines and columns count from 1, as in
+// Diagnostic. The text has to be there as a whole or be read again; over a stream, Lexer
+// counts lines as the text goes by instead.
+final class LineIndex {
+    private int[] starts = new int[64];
+    private int lines = 1;
+
+    private LineIndex() {}
+
+    static LineIndex of(CharSequence text) {
+        LineIndex index = new LineIndex();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') index.add(i + 1);
+        }
+        return index;
+    }
+
+    // The same over text read to its end, which is not kept.
+    static LineIndex read(Reader reader) throws IOException {
+        LineIndex index = new LineIndex();
+        char[] buffer = new char[8192];
+        int offset = 0;
+        for (int n; (n = reader.read(buffer)) >= 0; offset += n) {
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') index.add(offset + i + 1);
+            }
+        }
+        return index;
+    }
+
+    private void add(int lineStart) {
+        if (lines == starts.length) starts = Arrays.copyOf(starts, lines * 2);
+        starts[lines++] = lineStart;
+    }
+
+    int line(int offset) {
+        int low = 0;
+        int high = lines - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    int column(int offset) {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    // " at line:column" for a place in a message, or " at offset N" without an index.
+    static String at(LineIndex lines, int offset) {
+        return lines == null ? " at offset " + offset : " at " + lines.line(offset) + ":" + lines.column(offset);
+    }
+
+    int lineStart(int line) {
+        return starts[line - 1];
+    }
+
+    int lineCount() {
+        return lines;
+    }
+}
@@ -0,0 +1,73 @@
+package example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Read-only view of an ASCII source file mapped into memory. charAt reads the mapping
+// directly and subSequence only narrows the view, so text is copied only when a
+// String is actually asked for.
+final class MappedSource implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    private MappedSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // Files containing non-ASCII UTF-8 are decoded instead, since their char indices
+    // no longer match byte offsets.
+    public static CharSequence open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isAscii(mapped, (int) size)) {
+                return new MappedSource(mapped, 0, (int) size);
+            }
+            return StandardCharsets.UTF_8.decode(mapped).toString();
+        }
+    }
+
+    private static boolean isAscii(ByteBuffer buffer, int size) {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) return false;
+        }
+        for (; i < size; i++) {
+            if (buffer.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(offset + index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[length];
+        bytes.get(offset, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,136 @@
+package example;
+
+import java.util.*;
+
+class Nfa {
+    public static final int NO_KIND = 0;
+
+    private final int symbols;
+    private int size;
+    private int[][] edges;
+    private int[] edgeCount;
+    private int[][] epsilons;
+    private int[] epsilonCount;
+    private int[] accept;
+    private int[] acceptPriority;
+    private int[] endKind;
+    private int[] endPriority;
+
+    public Nfa(int symbols) {
+        this.symbols = symbols;
+        this.size = 0;
+        this.edges = new int[16][];
+        this.edgeCount = new int[16];
+        this.epsilons = new int[16][];
+        this.epsilonCount = new int[16];
+        this.accept = new int[16];
+        this.acceptPriority = new int[16];
+        this.endKind = new int[16];
+        this.endPriority = new int[16];
+    }
+
+    public int symbols() { return symbols; }
+    public int size() { return size; }
+
+    public int addState() {
+        if (size == accept.length) {
+            int capacity = size * 2;
+            edges = Arrays.copyOf(edges, capacity);
+            edgeCount = Arrays.copyOf(edgeCount, capacity);
+            epsilons = Arrays.copyOf(epsilons, capacity);
+            epsilonCount = Arrays.copyOf(epsilonCount, capacity);
+            accept = Arrays.copyOf(accept, capacity);
+            acceptPriority = Arrays.copyOf(acceptPriority, capacity);
+            endKind = Arrays.copyOf(endKind, capacity);
+            endPriority = Arrays.copyOf(endPriority, capacity);
+        }
+        edges[size] = new int[4];
+        epsilons[size] = new int[2];
+        return size++;
+    }
+
+    // Edges are stored as (symbol, target) pairs.
+    public void addEdge(int from, int symbol, int to) {
+        int count = edgeCount[from];
+        if (count + 2 > edges[from].length) {
+            edges[from] = Arrays.copyOf(edges[from], edges[from].length * 2);
+        }
+        edges[from][count] = symbol;
+        edges[from][count + 1] = to;
+        edgeCount[from] = count + 2;
+    }
+
+    public void addEpsilon(int from, int to) {
+        int count = epsilonCount[from];
+        if (count == epsilons[from].length) {
+            epsilons[from] = Arrays.copyOf(epsilons[from], count * 2);
+        }
+        epsilons[from][count] = to;
+        epsilonCount[from] = count + 1;
+    }
+
+    // A lower priority value wins when several rules accept the same input.
+    public void setAccept(int state, int kind, int priority) {
+        accept[state] = kind;
+        acceptPriority[state] = priority;
+    }
+
+    // Kind reported when the input ends while the automaton is in this state.
+    public void setEndKind(int state, int kind, int priority) {
+        endKind[state] = kind;
+        endPriority[state] = priority;
+    }
+
+    public BitSet closure(BitSet states) {
+        BitSet result = (BitSet) states.clone();
+        int[] stack = new int[size];
+        int top = 0;
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            stack[top++] = s;
+        }
+        while (top > 0) {
+            int s = stack[--top];
+            for (int i = 0; i < epsilonCount[s]; i++) {
+                int t = epsilons[s][i];
+                if (!result.get(t)) {
+                    result.set(t);
+                    stack[top++] = t;
+                }
+            }
+        }
+        return result;
+    }
+
+    public BitSet move(BitSet states, int symbol) {
+        BitSet result = new BitSet(size);
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            int[] stateEdges = edges[s];
+            for (int i = 0; i < edgeCount[s]; i += 2) {
+                if (stateEdges[i] == symbol) {
+                    result.set(stateEdges[i + 1]);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int acceptKind(BitSet states) {
+        return pick(states, accept, acceptPriority);
+    }
+
+    public int endKind(BitSet states) {
+        return pick(states, endKind, endPriority);
+    }
+
+    private static int pick(BitSet states, int[] kinds, int[] priorities) {
+        int kind = NO_KIND;
+        int best = Integer.MAX_VALUE;
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            if (kinds[s] != NO_KIND && priorities[s] < best) {
+                kind = kinds[s];
+                best = priorities[s];
+            }
+        }
+        return kind;
+    }
+}
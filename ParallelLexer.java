@@ -0,0 +1,185 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Lexes a large source as newline-aligned chunks on a ForkJoinPool. Each chunk is lexed
+// on the guess that a token starts at its first char. The merge then walks the chunks in
+// order: where the previous chunk's last token ends is where this chunk really starts,
+// so the guess is checked against it and the chunk is re-lexed from there if it was
+// wrong, e.g. inside a comment or string spanning the boundary. Scope depth and state
+// ids only depend on what came before, so they are filled in after the merge.
+// Anything that fails, including real lexer errors, is redone sequentially so that
+// errors and their line numbers come out exactly as Lexer reports them.
+final class ParallelLexer {
+    private static final int MIN_CHUNK = 256 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Chunk starts are only remembered this far in; a token that crosses a boundary and
+    // ends later than that makes the merge re-lex the chunk.
+    private static final int RESYNC_WINDOW = 4096;
+
+    private ParallelLexer() {}
+
+    public static List<Token> tokenize(CharSequence input, Lexer.Trace trace) {
+        return tokenize(input, trace, ForkJoinPool.commonPool());
+    }
+
+    public static List<Token> tokenize(CharSequence input, Lexer.Trace trace, ForkJoinPool pool) {
+        int[] bounds = chunkBounds(input, pool.getParallelism());
+        int count = bounds.length - 1;
+        if (count < 2) {
+            return new Lexer(input, Lexer.Engine.TABLE, trace).tokenize();
+        }
+
+        Part[] parts = new Part[count];
+        forEach(pool, count, i -> parts[i] = lex(input, trace, bounds[i], bounds[i + 1]));
+
+        if (!merge(input, trace, bounds, parts)) {
+            return new Lexer(input, Lexer.Engine.TABLE, trace).tokenize();
+        }
+        forEach(pool, count, i -> parts[i].resolve());
+
+        int total = 1;
+        for (Part part : parts) total += part.chunk.tokens.size() - part.firstToken;
+        List<Token> tokens = new ArrayList<>(total);
+        for (Part part : parts) {
+            tokens.addAll(part.chunk.tokens.subList(part.firstToken, part.chunk.tokens.size()));
+        }
+        tokens.add(new Token(Token.EOF, "EOF", null, "Global", input.length()));
+        return tokens;
+    }
+
+    private static int[] chunkBounds(CharSequence input, int threads) {
+        int length = input.length();
+        int size = Math.max(MIN_CHUNK, length / Math.max(1, threads * CHUNKS_PER_THREAD));
+        int[] bounds = new int[length / size + 2];
+        int count = 1;
+        int next = size;
+        while (next < length) {
+            while (next < length && input.charAt(next - 1) != '\n') next++;
+            if (next >= length) break;
+            bounds[count++] = next;
+            next += size;
+        }
+        bounds[count++] = length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static Part lex(CharSequence input, Lexer.Trace trace, int from, int to) {
+        Part part = new Part(new LexChunk(from, RESYNC_WINDOW));
+        try {
+            new Lexer(input, Lexer.Engine.TABLE, trace).lexChunk(part.chunk, to);
+        } catch (RuntimeException e) {
+            part.failed = true;
+        }
+        return part;
+    }
+
+    // Fixes where every chunk starts and the depth and state id it starts with. Returns
+    // false if the sequential lexer has to take over.
+    private static boolean merge(CharSequence input, Lexer.Trace trace, int[] bounds, Part[] parts) {
+        int start = 0;
+        int states = 0;
+        int depth = 0;
+        int scopes = 1;
+        for (int i = 0; i < parts.length; i++) {
+            Part part = parts[i];
+            if (start >= bounds[i + 1]) {
+                parts[i] = Part.EMPTY;
+                continue;
+            }
+            int step = part.chunk.stepAt(start);
+            if (step < 0) {
+                parts[i] = part = lex(input, trace, start, bounds[i + 1]);
+                step = 0;
+            }
+            if (part.failed) return false;
+
+            LexChunk chunk = part.chunk;
+            part.firstToken = chunk.stepTokens(step);
+            part.stateDelta = states - chunk.stepStates(step);
+            part.depth = depth;
+            for (int b = 0; b < chunk.braceCount(); b++) {
+                if (chunk.braceToken(b) < part.firstToken) continue;
+                if (chunk.braceOpens(b)) {
+                    depth++;
+                    scopes++;
+                } else {
+                    // Lexer pops its scope stack without checking, so this is where it throws.
+                    if (scopes == 0) return false;
+                    depth = Math.max(0, depth - 1);
+                    scopes--;
+                }
+            }
+            states += chunk.states() - chunk.stepStates(step);
+            start = chunk.end();
+        }
+        return true;
+    }
+
+    private static void forEach(ForkJoinPool pool, int count, IntConsumer action) {
+        pool.invoke(new ForEach(action, 0, count));
+    }
+
+    private static final class ForEach extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer action;
+        private final int from;
+        private final int to;
+
+        ForEach(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEach(action, from, middle), new ForEach(action, middle, to));
+        }
+    }
+
+    // A chunk and where the merge placed it.
+    private static final class Part {
+        static final Part EMPTY = new Part(new LexChunk(0, 0));
+
+        final LexChunk chunk;
+        boolean failed;
+        int firstToken;
+        int stateDelta;
+        int depth;
+
+        Part(LexChunk chunk) {
+            this.chunk = chunk;
+        }
+
+        // Sets scopes and state ids now that the depth and first id are known.
+        void resolve() {
+            if (this == EMPTY) return;
+            List<Token> tokens = chunk.tokens;
+            int b = 0;
+            while (b < chunk.braceCount() && chunk.braceToken(b) < firstToken) b++;
+            for (int i = firstToken; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token == null) continue;
+                token.shiftStates(stateDelta);
+                if (token.getType() == Token.IDENTIFIER) {
+                    token.setScope(depth == 0 ? "Global" : "Local");
+                } else if (b < chunk.braceCount() && chunk.braceToken(b) == i) {
+                    depth = chunk.braceOpens(b) ? depth + 1 : Math.max(0, depth - 1);
+                    b++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package example;
+
+import java.util.Iterator;
+
+// Recursive descent over statements with Pratt parsing for expressions, pulling one
+// token at a time from an iterator, e.g. Lexer.tokens(), so lexing and parsing can
+// overlap and no token list is needed. The tree goes into an Ast arena.
+//
+//   program     := statement* EOF
+//   statement   := (declaration | loop | if | read | write | "end" | block
+//                  | OUTPUT | INPUT | expression) ";"?
+//   declaration := DATATYPE name ("=" expression)?
+//   loop        := "loop" "(" expression ")" (block | statement* "end")
+//   if          := "if" "(" expression ")" statement ("else" statement)?
+//   read        := "read" name?
+//   write       := "write" expression?
+//   block       := "{" statement* "}"
+//   expression  := prefix (operator expression)*, by binding power:
+//                  = (right) < + - < * / % < unary - + < ^ (right)
+//
+// The lexer reports most words as identifiers, so reserved words are recognised by
+// Keywords from their text, once per token. Syntax errors become ERROR nodes holding the message and parsing goes
+// on after them, so one pass finds them all; every statement consumes at least one
+// token, which keeps recovery from looping.
+final class Parser {
+    private static final int ASSIGN_POWER = 1;
+    private static final int PREFIX_POWER = 7;
+
+    private final Iterator<Token> tokens;
+    private final Ast ast = new Ast();
+    private Token current;
+    // The current token's Token.reservedType() if it is a word, else IDENTIFIER.
+    private int word;
+    private boolean atNull;
+    private long consumed;
+
+    Parser(Iterator<Token> tokens) {
+        this.tokens = tokens;
+        advance();
+    }
+
+    // Parses the whole stream, up to and including EOF.
+    Ast parse() {
+        int program = ast.node(Ast.PROGRAM, null, 0);
+        while (!atEof()) {
+            ast.append(program, statement());
+        }
+        return ast;
+    }
+
+    private int statement() {
+        long start = consumed;
+        int node = statementBody();
+        if (isPunctuator(";")) {
+            advance();
+        } else if (consumed == start) {
+            advance();
+        }
+        return node;
+    }
+
+    private int statementBody() {
+        if (atNull) {
+            return error("Malformed token");
+        }
+        int type = current.getType();
+        String value = current.getValue();
+        int offset = current.getOffset();
+        if (type == Token.ERROR) {
+            return error("Unreadable input '" + value + "'");
+        }
+        if (type == Token.OUTPUT || type == Token.INPUT) {
+            advance();
+            return ast.node(type == Token.OUTPUT ? Ast.OUTPUT : Ast.INPUT, value, offset);
+        }
+        if (isPunctuator("{")) {
+            return block();
+        }
+        if (isPunctuator("}")) {
+            return error("'}' without a matching '{'");
+        }
+        if (isPunctuator(";")) {
+            return error("Empty statement");
+        }
+        if (isWord()) {
+            if (word == Token.DATATYPE) {
+                return declaration();
+            }
+            if (word == Token.KEYWORD) {
+                switch (value) {
+                    case "loop":
+                        return conditional(Ast.LOOP);
+                    case "if":
+                        return conditional(Ast.IF);
+                    case "read": {
+                        advance();
+                        int read = ast.node(Ast.READ, null, offset);
+                        if (isName()) ast.append(read, name());
+                        return read;
+                    }
+                    case "write": {
+                        advance();
+                        int write = ast.node(Ast.WRITE, null, offset);
+                        if (!atStatementEnd()) ast.append(write, expression(0));
+                        return write;
+                    }
+                    case "end":
+                        advance();
+                        return ast.node(Ast.END, null, offset);
+                    case "else":
+                        return error("'else' without 'if'");
+                    default:
+                        break;
+                }
+            }
+        }
+        return expression(0);
+    }
+
+    private int declaration() {
+        int node = ast.node(Ast.DECLARATION, current.getValue(), current.getOffset());
+        advance();
+        if (!isName()) {
+            ast.append(node, error("Expected a name after '" + ast.value(node) + "'"));
+            return node;
+        }
+        ast.append(node, name());
+        if (isOperator("=")) {
+            advance();
+            ast.append(node, expression(ASSIGN_POWER));
+        }
+        return node;
+    }
+
+    // loop and if: a parenthesised condition and a body, and for if an optional else.
+    private int conditional(int kind) {
+        int node = ast.node(kind, null, current.getOffset());
+        advance();
+        if (expectPunctuator("(", node)) {
+            ast.append(node, expression(0));
+            expectPunctuator(")", node);
+        }
+        if (kind == Ast.LOOP && !isPunctuator("{")) {
+            ast.append(node, loopBody());
+            return node;
+        }
+        ast.append(node, atEof() ? error("Expected a statement") : statement());
+        if (kind == Ast.IF && isWord() && word == Token.KEYWORD && current.getValue().equals("else")) {
+            advance();
+            ast.append(node, atEof() ? error("Expected a statement") : statement());
+        }
+        return node;
+    }
+
+    private int block() {
+        int node = ast.node(Ast.BLOCK, null, current.getOffset());
+        advance();
+        while (!isPunctuator("}")) {
+            if (atEof()) {
+                ast.append(node, error("Missing '}'"));
+                return node;
+            }
+            ast.append(node, statement());
+        }
+        advance();
+        return node;
+    }
+
+    // Statements up to the "end" closing a loop, as one block.
+    private int loopBody() {
+        int node = ast.node(Ast.BLOCK, null, atNull ? -1 : current.getOffset());
+        while (!(isWord() && word == Token.KEYWORD && current.getValue().equals("end"))) {
+            if (atEof()) {
+                ast.append(node, error("Missing 'end'"));
+                return node;
+            }
+            ast.append(node, statement());
+        }
+        advance();
+        return node;
+    }
+
+    private int expression(int minPower) {
+        int left = prefix();
+        while (!atNull && current.getType() == Token.OPERATOR) {
+            String operator = current.getValue();
+            int power = leftPower(operator);
+            if (power <= minPower) break;
+            int offset = current.getOffset();
+            advance();
+            boolean assign = operator.equals("=");
+            int node;
+            if (assign && ast.kind(left) != Ast.NAME) {
+                node = ast.node(Ast.ERROR, "Cannot assign to " + Ast.kindName(ast.kind(left)), offset);
+            } else {
+                node = ast.node(assign ? Ast.ASSIGN : Ast.BINARY, operator, offset);
+            }
+            ast.append(node, left);
+            ast.append(node, expression(rightPower(operator)));
+            left = node;
+        }
+        return left;
+    }
+
+    private int prefix() {
+        if (atNull) {
+            int node = error("Malformed token");
+            advance();
+            return node;
+        }
+        int type = current.getType();
+        String value = current.getValue();
+        int offset = current.getOffset();
+        switch (type) {
+            case Token.INTEGER:
+            case Token.DECIMAL: {
+                long fixed = current.getFixed();
+                advance();
+                return ast.number(literal(type), value, fixed, offset);
+            }
+            case Token.CHARACTER:
+            case Token.STRING:
+                advance();
+                return ast.node(literal(type), value, offset);
+            case Token.OPERATOR:
+                if (value.equals("-") || value.equals("+")) {
+                    advance();
+                    int node = ast.node(Ast.UNARY, value, offset);
+                    ast.append(node, expression(PREFIX_POWER));
+                    return node;
+                }
+                break;
+            case Token.PUNCTUATOR:
+                if (value.equals("(")) {
+                    advance();
+                    if (isPunctuator(")")) {
+                        int node = error("Expected an expression");
+                        advance();
+                        return node;
+                    }
+                    int inner = expression(0);
+                    if (isPunctuator(")")) {
+                        advance();
+                        return inner;
+                    }
+                    int node = error("Missing ')'");
+                    ast.append(node, inner);
+                    return node;
+                }
+                break;
+            default:
+                if (isWord() && word == Token.BOOLEAN) {
+                    advance();
+                    return ast.node(Ast.BOOLEAN, value, offset);
+                }
+                if (isName()) {
+                    return name();
+                }
+                break;
+        }
+        if (atStatementEnd()) {
+            return error("Expected an expression");
+        }
+        int node = error("Unexpected '" + value + "'");
+        advance();
+        return node;
+    }
+
+    private int name() {
+        int node = ast.node(Ast.NAME, current.getValue(), current.getOffset());
+        advance();
+        return node;
+    }
+
+    private boolean expectPunctuator(String punctuator, int parent) {
+        if (isPunctuator(punctuator)) {
+            advance();
+            return true;
+        }
+        ast.append(parent, error("Expected '" + punctuator + "'"));
+        return false;
+    }
+
+    private int error(String message) {
+        return ast.node(Ast.ERROR, message, atNull ? -1 : current.getOffset());
+    }
+
+    private static int literal(int type) {
+        return switch (type) {
+            case Token.INTEGER -> Ast.INTEGER;
+            case Token.DECIMAL -> Ast.DECIMAL;
+            case Token.CHARACTER -> Ast.CHARACTER;
+            default -> Ast.STRING;
+        };
+    }
+
+    private static int leftPower(String operator) {
+        return switch (operator) {
+            case "=" -> 2;
+            case "+", "-" -> 3;
+            case "*", "/", "%" -> 5;
+            case "^" -> 9;
+            default -> 0;
+        };
+    }
+
+    // One below the left power for the right-associative = and ^.
+    private static int rightPower(String operator) {
+        return switch (operator) {
+            case "=" -> ASSIGN_POWER;
+            case "^" -> 8;
+            default -> leftPower(operator);
+        };
+    }
+
+    private boolean isWord() {
+        if (atNull) return false;
+        int type = current.getType();
+        return type == Token.IDENTIFIER || type == Token.KEYWORD || type == Token.DATATYPE || type == Token.BOOLEAN;
+    }
+
+    private boolean isName() {
+        return isWord() && word == Token.IDENTIFIER;
+    }
+
+    private boolean isPunctuator(String punctuator) {
+        return !atNull && current.getType() == Token.PUNCTUATOR && current.getValue().equals(punctuator);
+    }
+
+    private boolean isOperator(String operator) {
+        return !atNull && current.getType() == Token.OPERATOR && current.getValue().equals(operator);
+    }
+
+    private boolean atStatementEnd() {
+        return atEof() || isPunctuator(";") || isPunctuator("}") || isPunctuator(")");
+    }
+
+    private boolean atEof() {
+        return !atNull && current.getType() == Token.EOF;
+    }
+
+    // Past EOF the current token stays EOF.
+    private void advance() {
+        if (current != null && !atNull && current.getType() == Token.EOF) return;
+        if (!tokens.hasNext()) {
+            current = new Token(Token.EOF, "EOF", null);
+            atNull = false;
+            return;
+        }
+        current = tokens.next();
+        atNull = current == null;
+        word = isWord() ? current.reservedType() : Token.IDENTIFIER;
+        consumed++;
+    }
+}
@@ -0,0 +1,138 @@
+package example;
+
+// A compiled .sa program: register bytecode in one int array. Every instruction is an
+// opcode followed by its operands, registers and jump targets as indexes, constants
+// and strings as indexes into their pools. Registers are longs: num values as they
+// are, dec values as FixedPoint longs, bool as 0 or 1 and char as its code, so the
+// instruction says how to read them. offsets holds the source offset each instruction
+// came from at its opcode's index, -1 where unknown; lines, when known, turns them into
+// lines and columns for error messages.
+final class Program {
+    static final int HALT = 0;
+    static final int CONST = 1;             // dst k
+    static final int MOVE = 2;              // dst a
+    static final int ADD_N = 3;             // dst a b, and so on for the rest
+    static final int SUB_N = 4;
+    static final int MUL_N = 5;
+    static final int DIV_N = 6;
+    static final int MOD_N = 7;
+    static final int POW_N = 8;
+    static final int ADD_D = 9;
+    static final int SUB_D = 10;
+    static final int MUL_D = 11;
+    static final int DIV_D = 12;
+    static final int MOD_D = 13;
+    static final int POW_D = 14;
+    static final int NEG = 15;              // dst a
+    static final int N2D = 16;              // dst a: num to dec
+    static final int D2N = 17;              // dst a: dec to num, HALF_UP
+    static final int JUMP = 18;             // target
+    static final int JUMP_IF_ZERO = 19;     // a target
+    static final int JUMP_IF_NONZERO = 20;  // a target
+    static final int WRITE_N = 21;          // a
+    static final int WRITE_D = 22;
+    static final int WRITE_B = 23;
+    static final int WRITE_C = 24;
+    static final int WRITE_S = 25;          // string
+    static final int READ_N = 26;           // dst
+    static final int READ_D = 27;
+    static final int READ_B = 28;
+    static final int READ_C = 29;
+    static final int OPCODES = 30;
+
+    final int[] code;
+    final int[] offsets;
+    final long[] constants;
+    final String[] strings;
+    final int registers;
+    final LineIndex lines;
+
+    Program(int[] code, int[] offsets, long[] constants, String[] strings, int registers, LineIndex lines) {
+        this.code = code;
+        this.offsets = offsets;
+        this.constants = constants;
+        this.strings = strings;
+        this.registers = registers;
+        this.lines = lines;
+    }
+
+    // Ints taken by an instruction, opcode included.
+    static int length(int opcode) {
+        return switch (opcode) {
+            case HALT -> 1;
+            case JUMP, WRITE_N, WRITE_D, WRITE_B, WRITE_C, WRITE_S, READ_N, READ_D, READ_B, READ_C -> 2;
+            case CONST, MOVE, NEG, N2D, D2N, JUMP_IF_ZERO, JUMP_IF_NONZERO -> 3;
+            default -> 4;
+        };
+    }
+
+    static String name(int opcode) {
+        return switch (opcode) {
+            case HALT -> "HALT";
+            case CONST -> "CONST";
+            case MOVE -> "MOVE";
+            case ADD_N -> "ADD_N";
+            case SUB_N -> "SUB_N";
+            case MUL_N -> "MUL_N";
+            case DIV_N -> "DIV_N";
+            case MOD_N -> "MOD_N";
+            case POW_N -> "POW_N";
+            case ADD_D -> "ADD_D";
+            case SUB_D -> "SUB_D";
+            case MUL_D -> "MUL_D";
+            case DIV_D -> "DIV_D";
+            case MOD_D -> "MOD_D";
+            case POW_D -> "POW_D";
+            case NEG -> "NEG";
+            case N2D -> "N2D";
+            case D2N -> "D2N";
+            case JUMP -> "JUMP";
+            case JUMP_IF_ZERO -> "JUMP_IF_ZERO";
+            case JUMP_IF_NONZERO -> "JUMP_IF_NONZERO";
+            case WRITE_N -> "WRITE_N";
+            case WRITE_D -> "WRITE_D";
+            case WRITE_B -> "WRITE_B";
+            case WRITE_C -> "WRITE_C";
+            case WRITE_S -> "WRITE_S";
+            case READ_N -> "READ_N";
+            case READ_D -> "READ_D";
+            case READ_B -> "READ_B";
+            case READ_C -> "READ_C";
+            default -> "OP" + opcode;
+        };
+    }
+
+    // One instruction per line, e.g. "0004  ADD_N        r2, r0, r1".
+    String disassemble() {
+        StringBuilder text = new StringBuilder();
+        text.append(registers).append(" registers, ").append(constants.length).append(" constants, ")
+            .append(strings.length).append(" strings\n");
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            int opcode = code[pc];
+            text.append(String.format("%04d  %-16s", pc, name(opcode)));
+            switch (opcode) {
+                case HALT -> {}
+                case CONST -> text.append('r').append(code[pc + 1]).append(", ").append(constant(code[pc + 2]));
+                case JUMP -> text.append(String.format("%04d", code[pc + 1]));
+                case JUMP_IF_ZERO, JUMP_IF_NONZERO ->
+                    text.append('r').append(code[pc + 1]).append(", ").append(String.format("%04d", code[pc + 2]));
+                case WRITE_S -> text.append('"').append(strings[code[pc + 1]]).append('"');
+                default -> {
+                    for (int i = 1; i < length(opcode); i++) {
+                        if (i > 1) text.append(", ");
+                        text.append('r').append(code[pc + i]);
+                    }
+                }
+            }
+            int end = text.length();
+            while (text.charAt(end - 1) == ' ') end--;
+            text.setLength(end);
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private String constant(int k) {
+        return "#" + k + " (" + constants[k] + ")";
+    }
+}
@@ -0,0 +1,458 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiles a parsed program to register bytecode for Interpreter. Types are settled
+// here, so each instruction knows whether its registers hold num or dec values and
+// nothing is checked or boxed at run time.
+//
+// Registers are allocated like a stack. A variable is a SymbolTable entry declared in
+// the innermost scope, holding the next free register and its type name; leaving a block
+// frees its variables' registers for what comes after it. Temporaries are a second
+// stack that lives for one statement, numbered below zero while compiling and moved
+// above the variables once their count is known. A name assigned or read before any
+// declaration is declared in the current scope, again as SymbolTable does; using its
+// value first is an error. Errors throw IllegalArgumentException.
+final class ProgramCompiler {
+    static final int NUM = 0;
+    static final int DEC = 1;
+    static final int BOOL = 2;
+    static final int CHAR = 3;
+    private static final String[] TYPE_NAMES = {"num", "dec", "bool", "char"};
+
+    // value() returns the register and the type packed as register << TYPE_BITS | type.
+    private static final int TYPE_BITS = 2;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    private final Ast ast;
+    private final LineIndex lines;
+    private int[] code = new int[256];
+    private int[] offsets = new int[256];
+    private int size;
+    private int lastInstruction = -1;
+    private long[] constants = new long[16];
+    private final Map<Long, Integer> constantIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final SymbolTable symbols = new SymbolTable();
+    private int depth;
+    private int variables;
+    private int maxVariables;
+    private int temporaries;
+    private int maxTemporaries;
+    private int offset = -1;
+
+    private ProgramCompiler(Ast ast, LineIndex lines) {
+        this.ast = ast;
+        this.lines = lines;
+    }
+
+    static Program compile(Ast ast) {
+        return compile(ast, null);
+    }
+
+    // With the source's lines, errors here and at run time say line and column rather
+    // than offset.
+    static Program compile(Ast ast, LineIndex lines) {
+        ProgramCompiler compiler = new ProgramCompiler(ast, lines);
+        if (ast.errors() > 0) {
+            int error = firstError(ast);
+            throw compiler.error(ast.value(error), error);
+        }
+        for (int child = ast.firstChild(Ast.PROGRAM); child != Ast.NONE; child = ast.nextSibling(child)) {
+            compiler.statement(child);
+        }
+        compiler.emit(Program.HALT);
+        return compiler.program();
+    }
+
+    // Lexes, parses and compiles in one go; lexing errors throw as they do for Lexer.
+    static Program compile(CharSequence source) {
+        Lexer lexer = new Lexer(source);
+        return compile(new Parser(lexer.tokens()).parse(), lexer.lines());
+    }
+
+    private Program program() {
+        for (int pc = 0; pc < size; pc += Program.length(code[pc])) {
+            switch (code[pc]) {
+                case Program.HALT, Program.JUMP, Program.WRITE_S -> {}
+                case Program.CONST, Program.JUMP_IF_ZERO, Program.JUMP_IF_NONZERO -> code[pc + 1] = register(code[pc + 1]);
+                default -> {
+                    for (int i = 1; i < Program.length(code[pc]); i++) code[pc + i] = register(code[pc + i]);
+                }
+            }
+        }
+        return new Program(Arrays.copyOf(code, size), Arrays.copyOf(offsets, size),
+            Arrays.copyOf(constants, constantIds.size()), strings.toArray(new String[0]),
+            Math.max(maxVariables + maxTemporaries, 1), lines);
+    }
+
+    private int register(int id) {
+        return id < 0 ? maxVariables - id - 1 : id;
+    }
+
+    private void statement(int node) {
+        offset = ast.offset(node);
+        int live = temporaries;
+        switch (ast.kind(node)) {
+            case Ast.BLOCK -> {
+                symbols.enterScope();
+                depth++;
+                int saved = variables;
+                for (int child = ast.firstChild(node); child != Ast.NONE; child = ast.nextSibling(child)) {
+                    statement(child);
+                }
+                variables = saved;
+                depth--;
+                symbols.exitScope();
+            }
+            case Ast.DECLARATION -> declaration(node);
+            case Ast.LOOP -> loop(node);
+            case Ast.IF -> conditional(node);
+            case Ast.READ -> {
+                int name = ast.firstChild(node);
+                if (name == Ast.NONE) throw error("'read' needs a variable", node);
+                read(ast.value(name), name);
+            }
+            case Ast.INPUT -> {
+                int name = inner(node, "input(");
+                if (ast.kind(name) != Ast.NAME) throw error("'input' needs a variable", node);
+                read(ast.value(name), node);
+            }
+            case Ast.WRITE -> {
+                int value = ast.firstChild(node);
+                if (value == Ast.NONE) throw error("'write' needs a value", node);
+                write(value);
+            }
+            case Ast.OUTPUT -> write(inner(node, "output("));
+            case Ast.END -> emit(Program.HALT);
+            default -> value(node, temporary());
+        }
+        temporaries = live;
+    }
+
+    private void declaration(int node) {
+        int type = type(ast.value(node));
+        int name = ast.firstChild(node);
+        int init = ast.nextSibling(name);
+        String variable = ast.value(name);
+        if (symbols.isDeclaredHere(variable)) {
+            throw error("'" + variable + "' is already declared in this scope", name);
+        }
+        if (init == Ast.NONE) {
+            int slot = declare(variable, type).register;
+            emit(Program.CONST, slot, constant(0));
+            return;
+        }
+        // The initialiser is compiled before the name exists, so it sees any outer
+        // variable of the same name.
+        int target = temporary();
+        int value = convert(value(init, target), type, target);
+        int slot = declare(variable, type).register;
+        move(slot, value >> TYPE_BITS);
+    }
+
+    // The condition is tested at the bottom, so an iteration takes one branch.
+    private void loop(int node) {
+        int condition = ast.firstChild(node);
+        int body = ast.nextSibling(condition);
+        int entry = emit(Program.JUMP, 0);
+        int start = size;
+        statement(body);
+        code[entry + 1] = size;
+        offset = ast.offset(node);
+        int value = value(condition, temporary());
+        temporaries--;
+        emit(Program.JUMP_IF_NONZERO, value >> TYPE_BITS, start);
+    }
+
+    private void conditional(int node) {
+        int condition = ast.firstChild(node);
+        int then = ast.nextSibling(condition);
+        int otherwise = ast.nextSibling(then);
+        int value = value(condition, temporary());
+        temporaries--;
+        int skip = emit(Program.JUMP_IF_ZERO, value >> TYPE_BITS, 0);
+        statement(then);
+        if (otherwise == Ast.NONE) {
+            code[skip + 2] = size;
+            return;
+        }
+        int exit = emit(Program.JUMP, 0);
+        code[skip + 2] = size;
+        statement(otherwise);
+        code[exit + 1] = size;
+    }
+
+    private void read(String name, int node) {
+        SymbolTableEntry variable = symbols.lookup(name);
+        if (variable == null) variable = declare(name, NUM);
+        offset = ast.offset(node);
+        emit(switch (type(variable.type)) {
+            case DEC -> Program.READ_D;
+            case BOOL -> Program.READ_B;
+            case CHAR -> Program.READ_C;
+            default -> Program.READ_N;
+        }, variable.register);
+    }
+
+    private void write(int node) {
+        if (ast.kind(node) == Ast.STRING) {
+            emit(Program.WRITE_S, string(ast.value(node)));
+            return;
+        }
+        int value = value(node, temporary());
+        emit(switch (value & TYPE_MASK) {
+            case DEC -> Program.WRITE_D;
+            case BOOL -> Program.WRITE_B;
+            case CHAR -> Program.WRITE_C;
+            default -> Program.WRITE_N;
+        }, value >> TYPE_BITS);
+    }
+
+    // output(x) and input(x) arrive as one token; what is between the parentheses is
+    // parsed as an expression of its own.
+    private int inner(int node, String prefix) {
+        String text = ast.value(node);
+        Ast inner = new Parser(new Lexer(text.substring(prefix.length(), text.length() - 1)).tokens()).parse();
+        // the inner text is not the source's, so its errors are placed at the call
+        if (inner.errors() > 0) throw error(inner.value(firstError(inner)), node);
+        if (inner.childCount(Ast.PROGRAM) != 1) throw error("Expected one value in '" + text + "'", node);
+        return graft(inner, inner.firstChild(Ast.PROGRAM), ast.offset(node));
+    }
+
+    // Copies a node of another tree into this one, every copy at the given offset.
+    private int graft(Ast from, int node, int at) {
+        int kind = from.kind(node);
+        int copy = kind == Ast.INTEGER || kind == Ast.DECIMAL
+            ? ast.number(kind, from.value(node), from.fixed(node), at)
+            : ast.node(kind, from.value(node), at);
+        for (int child = from.firstChild(node); child != Ast.NONE; child = from.nextSibling(child)) {
+            ast.append(copy, graft(from, child, at));
+        }
+        return copy;
+    }
+
+    // Compiles an expression. A computed value goes to target, a temporary the caller
+    // owns; a variable's value is used where it is, so the result register may differ.
+    private int value(int node, int target) {
+        offset = ast.offset(node);
+        switch (ast.kind(node)) {
+            case Ast.INTEGER:
+            case Ast.DECIMAL: {
+                String text = ast.value(node);
+                boolean integer = ast.kind(node) == Ast.INTEGER;
+                long fixed = ast.fixed(node);
+                long value = integer ? fixed / FixedPoint.ONE : fixed;
+                if (fixed == FixedPoint.OVERFLOW && integer) {
+                    // a num literal only has to fit a long, not a scaled one
+                    try {
+                        value = Long.parseLong(text);
+                    } catch (NumberFormatException e) {
+                        throw error("Number out of range '" + text + "'", node);
+                    }
+                } else if (fixed < 0) {
+                    throw error("Number out of range '" + text + "'", node);
+                }
+                emit(Program.CONST, target, constant(value));
+                return pack(target, integer ? NUM : DEC);
+            }
+            case Ast.BOOLEAN:
+                emit(Program.CONST, target, constant(ast.value(node).equals("true") ? 1 : 0));
+                return pack(target, BOOL);
+            case Ast.CHARACTER:
+                emit(Program.CONST, target, constant(ast.value(node).charAt(0)));
+                return pack(target, CHAR);
+            case Ast.STRING:
+                throw error("A string can only be written", node);
+            case Ast.NAME: {
+                SymbolTableEntry variable = symbols.lookup(ast.value(node));
+                if (variable == null) throw error("'" + ast.value(node) + "' is used before it has a value", node);
+                return pack(variable.register, type(variable.type));
+            }
+            case Ast.UNARY: {
+                int operand = value(ast.firstChild(node), target);
+                if (ast.value(node).equals("+")) return operand;
+                offset = ast.offset(node);
+                int type = (operand & TYPE_MASK) == DEC ? DEC : NUM;
+                if (isConstant(operand)) {
+                    fold(-constants[code[lastInstruction + 2]], target);
+                } else {
+                    emit(Program.NEG, target, operand >> TYPE_BITS);
+                }
+                return pack(target, type);
+            }
+            case Ast.BINARY:
+                return binary(node, target);
+            case Ast.ASSIGN:
+                return assign(node, target);
+            default:
+                throw error("Expected a value, found " + Ast.kindName(ast.kind(node)).toLowerCase(), node);
+        }
+    }
+
+    private int binary(int node, int target) {
+        int left = value(ast.firstChild(node), target);
+        int scratch = temporary();
+        int right = value(ast.nextSibling(ast.firstChild(node)), scratch);
+        boolean dec = (left & TYPE_MASK) == DEC || (right & TYPE_MASK) == DEC;
+        if (dec) {
+            left = convert(left, DEC, target);
+            right = convert(right, DEC, scratch);
+        }
+        offset = ast.offset(node);
+        int opcode = switch (ast.value(node)) {
+            case "+" -> dec ? Program.ADD_D : Program.ADD_N;
+            case "-" -> dec ? Program.SUB_D : Program.SUB_N;
+            case "*" -> dec ? Program.MUL_D : Program.MUL_N;
+            case "/" -> dec ? Program.DIV_D : Program.DIV_N;
+            case "%" -> dec ? Program.MOD_D : Program.MOD_N;
+            default -> dec ? Program.POW_D : Program.POW_N;
+        };
+        emit(opcode, target, left >> TYPE_BITS, right >> TYPE_BITS);
+        temporaries--;
+        return pack(target, dec ? DEC : NUM);
+    }
+
+    // The value goes to target first and then to the variable.
+    private int assign(int node, int target) {
+        int name = ast.firstChild(node);
+        String variableName = ast.value(name);
+        SymbolTableEntry variable = symbols.lookup(variableName);
+        int value = value(ast.nextSibling(name), target);
+        if (variable == null) variable = declare(variableName, value & TYPE_MASK);
+        int type = type(variable.type);
+        value = convert(value, type, target);
+        offset = ast.offset(node);
+        move(variable.register, value >> TYPE_BITS);
+        return pack(variable.register, type);
+    }
+
+    // num and dec convert both ways; bool and char are stored as they are. A constant
+    // just loaded is converted here rather than at run time.
+    private int convert(int value, int type, int target) {
+        int from = value & TYPE_MASK;
+        if ((type == DEC) != (from == DEC) && isConstant(value)) {
+            long constant = constants[code[lastInstruction + 2]];
+            try {
+                fold(type == DEC ? FixedPoint.fromWhole(constant) : FixedPoint.toWhole(constant), target);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Error: Number out of range" + (offset < 0 ? "" : LineIndex.at(lines, offset)));
+            }
+            return pack(target, type);
+        }
+        if (type == DEC && from != DEC) {
+            emit(Program.N2D, target, value >> TYPE_BITS);
+            return pack(target, DEC);
+        }
+        if (type != DEC && from == DEC) {
+            emit(Program.D2N, target, value >> TYPE_BITS);
+            return pack(target, type);
+        }
+        return pack(value >> TYPE_BITS, type);
+    }
+
+    // When the last instruction just computed a temporary, it is retargeted to the
+    // variable instead of adding a move; safe because every instruction reads its
+    // operands before writing, and nothing else reads a temporary it has just written.
+    private void move(int slot, int from) {
+        if (from == slot) return;
+        if (from < 0 && lastInstruction >= 0 && writes(code[lastInstruction]) && code[lastInstruction + 1] == from) {
+            code[lastInstruction + 1] = slot;
+            return;
+        }
+        emit(Program.MOVE, slot, from);
+    }
+
+    // Whether value is a temporary the last instruction loaded a constant into.
+    private boolean isConstant(int value) {
+        int register = value >> TYPE_BITS;
+        return register < 0 && lastInstruction >= 0 && code[lastInstruction] == Program.CONST
+            && code[lastInstruction + 1] == register;
+    }
+
+    // Replaces that load with one of the given constant into target.
+    private void fold(long value, int target) {
+        code[lastInstruction + 1] = target;
+        code[lastInstruction + 2] = constant(value);
+    }
+
+    private static boolean writes(int opcode) {
+        return opcode >= Program.CONST && opcode <= Program.D2N;
+    }
+
+    // Registers are handed out per block and taken back when it ends.
+    private SymbolTableEntry declare(String name, int type) {
+        SymbolTableEntry entry = symbols.declare(name, TYPE_NAMES[type], depth == 0 ? "Global" : "Local", "-");
+        entry.register = variables++;
+        maxVariables = Math.max(maxVariables, variables);
+        return entry;
+    }
+
+    private int temporary() {
+        int id = -++temporaries;
+        maxTemporaries = Math.max(maxTemporaries, temporaries);
+        return id;
+    }
+
+    private int emit(int... instruction) {
+        while (size + instruction.length > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        int at = size;
+        System.arraycopy(instruction, 0, code, at, instruction.length);
+        Arrays.fill(offsets, at, at + instruction.length, -1);
+        offsets[at] = offset;
+        size += instruction.length;
+        lastInstruction = at;
+        return at;
+    }
+
+    private int constant(long value) {
+        Integer id = constantIds.get(value);
+        if (id == null) {
+            id = constantIds.size();
+            if (id == constants.length) constants = Arrays.copyOf(constants, id * 2);
+            constants[id] = value;
+            constantIds.put(value, id);
+        }
+        return id;
+    }
+
+    private int string(String text) {
+        return stringIds.computeIfAbsent(text, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    private static int pack(int register, int type) {
+        return register << TYPE_BITS | type;
+    }
+
+    private static int type(String datatype) {
+        return switch (datatype) {
+            case "dec" -> DEC;
+            case "bool" -> BOOL;
+            case "char" -> CHAR;
+            default -> NUM;
+        };
+    }
+
+    private IllegalArgumentException error(String message, int node) {
+        int at = ast.offset(node);
+        return new IllegalArgumentException("Error: " + message + (at < 0 ? "" : LineIndex.at(lines, at)));
+    }
+
+    // The first ERROR node of a tree that has one.
+    private static int firstError(Ast ast) {
+        int node = 0;
+        while (ast.kind(node) != Ast.ERROR) node++;
+        return node;
+    }
+}
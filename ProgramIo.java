@@ -0,0 +1,84 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+// Where a running program's input and output go, for Interpreter and code ProgramJit
+// generated alike: every write and read instruction is one call here, taking or
+// returning a value in its register form, so values stay primitive on the way. Reading
+// input that does not fit the type throws IllegalArgumentException.
+interface ProgramIo {
+    void writeNum(long value);
+    void writeDec(long value);
+    void writeBool(long value);
+    void writeChar(long value);
+    void writeString(String value);
+
+    long readNum() throws IOException;
+    long readDec() throws IOException;
+    long readBool() throws IOException;
+    long readChar() throws IOException;
+
+    // One value per line both ways.
+    static ProgramIo console(BufferedReader in, PrintStream out) {
+        return new Console(in, out);
+    }
+
+    final class Console implements ProgramIo {
+        private final BufferedReader in;
+        private final PrintStream out;
+
+        Console(BufferedReader in, PrintStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override public void writeNum(long value) { out.println(value); }
+        @Override public void writeDec(long value) { out.println(FixedPoint.format(value)); }
+        @Override public void writeBool(long value) { out.println(value != 0); }
+        @Override public void writeChar(long value) { out.println((char) value); }
+        @Override public void writeString(String value) { out.println(value); }
+
+        @Override
+        public long readNum() throws IOException {
+            String text = readLine().trim();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a num value '" + text + "'");
+            }
+        }
+
+        @Override
+        public long readDec() throws IOException {
+            String text = readLine().trim();
+            boolean negative = text.startsWith("-");
+            int start = negative ? 1 : 0;
+            long fixed = start == text.length() ? FixedPoint.MALFORMED : FixedPoint.parse(text, start, text.length());
+            if (fixed < 0) throw new IllegalArgumentException("Not a dec value '" + text + "'");
+            return negative ? -fixed : fixed;
+        }
+
+        @Override
+        public long readBool() throws IOException {
+            String text = readLine().trim();
+            if (text.equals("true")) return 1;
+            if (text.equals("false")) return 0;
+            throw new IllegalArgumentException("Not a bool value '" + text + "'");
+        }
+
+        @Override
+        public long readChar() throws IOException {
+            String line = readLine();
+            if (line.isEmpty()) throw new IllegalArgumentException("Not a char value ''");
+            return line.charAt(0);
+        }
+
+        private String readLine() throws IOException {
+            String line = in.readLine();
+            if (line == null) throw new IllegalArgumentException("no more input");
+            return line;
+        }
+    }
+}
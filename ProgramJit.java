@@ -0,0 +1,452 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// The compiling tier: translates a Program's register bytecode into one JVM method and
+// loads it as a hidden class, so HotSpot compiles the program's loops to native code.
+// Each register becomes a long local, each instruction a few JVM instructions; num
+// and dec arithmetic calls the same Math, FixedPoint and Interpreter methods the
+// interpreter does, so both tiers compute and fail alike, and I/O goes through the
+// ProgramIo the caller passes in.
+//
+// The method takes the registers and a start pc, which lets Interpreter hand over a
+// running program at a loop head: it loads every register, then a lookupswitch jumps
+// to the start, either 0 or the target of a backward branch. Every local is a long
+// from there on, so all stack map frames are the same one. Before each instruction
+// that can fail, the code stores its pc in one more local. A handler around the body
+// hands the error and that pc back, so runtime errors name the same place as the
+// interpreter's do. Programs too large for one JVM method, or with strings the class
+// file cannot hold, are not compiled.
+final class ProgramJit {
+    interface Compiled {
+        void run(ProgramIo io, long[] registers, int start) throws IOException;
+    }
+
+    private static final String CLASS_NAME = "example/CompiledProgram";
+    private static final String COMPILED = "example/ProgramJit$Compiled";
+    private static final String IO = "example/ProgramIo";
+    private static final String RUN_DESCRIPTOR = "(Lexample/ProgramIo;[JI)V";
+    private static final int FIRST_REGISTER = 4;  // after this, io, registers, start
+    private static final String RUNTIME_EXCEPTION = "java/lang/RuntimeException";
+
+    private static final int LCONST_0 = 0x09;
+    private static final int LCONST_1 = 0x0a;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int LLOAD = 0x16;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ISTORE = 0x36;
+    private static final int LALOAD = 0x2f;
+    private static final int LSTORE = 0x37;
+    private static final int LCMP = 0x94;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int GOTO = 0xa7;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int RETURN = 0xb1;
+    private static final int ATHROW = 0xbf;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int WIDE = 0xc4;
+
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_LONG = 4;
+    private static final int ITEM_OBJECT = 7;
+    private static final int FULL_FRAME = 255;
+    private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+
+    private final Program program;
+    private final int pcSlot;
+    private final ClassFileWriter classFile = new ClassFileWriter();
+    private byte[] out = new byte[1024];
+    private int size;
+
+    private ProgramJit(Program program) {
+        this.program = program;
+        this.pcSlot = FIRST_REGISTER + 2 * program.registers;
+    }
+
+    // Null when the program cannot be compiled.
+    static Compiled compile(Program program) {
+        try {
+            byte[] bytes = new ProgramJit(program).classBytes();
+            if (bytes == null) return null;
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Compiled) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (UncheckedIOException | IllegalStateException e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Generated code was rejected", e);
+        }
+    }
+
+    // Runs the program's compiled code from pc start with the given registers, errors
+    // worded as the interpreter words them.
+    static void run(Program program, Compiled compiled, ProgramIo io, long[] registers, int start) throws IOException {
+        try {
+            compiled.run(io, registers, start);
+        } catch (Located e) {
+            RuntimeException error = (RuntimeException) e.getCause();
+            String where = Interpreter.where(program, e.pc);
+            if (error instanceof ArithmeticException) {
+                throw new ArithmeticException("Runtime error: " + error.getMessage() + where);
+            } else if (error instanceof IllegalArgumentException) {
+                throw new IllegalArgumentException("Runtime error: " + error.getMessage() + where, error);
+            }
+            throw error;
+        }
+    }
+
+    static void run(Program program, ProgramIo io) throws IOException {
+        Compiled compiled = compile(program);
+        if (compiled == null) {
+            new Interpreter(io, false).run(program);
+        } else {
+            run(program, compiled, io, new long[program.registers], 0);
+        }
+    }
+
+    // What the generated code's handler throws: the error and the pc it stored last.
+    static RuntimeException located(RuntimeException error, int pc) {
+        return new Located(error, pc);
+    }
+
+    private static final class Located extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int pc;
+
+        Located(RuntimeException error, int pc) {
+            super(null, error, false, false);
+            this.pc = pc;
+        }
+    }
+
+    private byte[] classBytes() {
+        int[] code = program.code;
+        int registers = program.registers;
+        if (FIRST_REGISTER + 2L * registers + 1 > 0xffff) return null;
+
+        BitSet entries = new BitSet();
+        BitSet frames = new BitSet();
+        entries.set(0);
+        for (int pc = 0; pc < code.length; pc += Program.length(code[pc])) {
+            int opcode = code[pc];
+            int next = pc + Program.length(opcode);
+            if (opcode == Program.JUMP) {
+                frames.set(code[pc + 1]);
+                frames.set(next);
+            } else if (opcode == Program.JUMP_IF_ZERO || opcode == Program.JUMP_IF_NONZERO) {
+                frames.set(code[pc + 2]);
+                if (code[pc + 2] < pc) entries.set(code[pc + 2]);
+            } else if (opcode == Program.HALT) {
+                frames.set(next);
+            }
+        }
+        frames.or(entries);
+        frames.clear(code.length, Integer.MAX_VALUE);
+
+        // Prologue: load the registers, then jump to the start pc.
+        for (int i = 0; i < registers; i++) {
+            emit(ALOAD_2);
+            pushInt(i);
+            emit(LALOAD);
+            local(LSTORE, i);
+        }
+        storePc(0);
+        emit(ILOAD_3);
+        int lookupswitch = size;
+        emit(LOOKUPSWITCH);
+        while (size % 4 != 0) emit(0);
+        int defaultAt = size;
+        emitInt(0);
+        emitInt(entries.cardinality());
+        int pairsAt = size;
+        for (int pc = entries.nextSetBit(0); pc >= 0; pc = entries.nextSetBit(pc + 1)) {
+            emitInt(pc);
+            emitInt(0);
+        }
+
+        int[] addresses = new int[code.length + 1];
+        Arrays.fill(addresses, -1);
+        int[] branches = new int[code.length];
+        int[] branchTargets = new int[code.length];
+        int branchCount = 0;
+        for (int pc = 0; pc < code.length; pc += Program.length(code[pc])) {
+            addresses[pc] = size;
+            int opcode = code[pc];
+            switch (opcode) {
+                case Program.HALT -> emit(RETURN);
+                case Program.CONST -> {
+                    long value = program.constants[code[pc + 2]];
+                    if (value == 0 || value == 1) {
+                        emit(value == 0 ? LCONST_0 : LCONST_1);
+                    } else {
+                        emit(LDC2_W);
+                        emitShort(classFile.longConstant(value));
+                    }
+                    local(LSTORE, code[pc + 1]);
+                }
+                case Program.MOVE -> {
+                    local(LLOAD, code[pc + 2]);
+                    local(LSTORE, code[pc + 1]);
+                }
+                case Program.NEG -> unary(code, pc, "java/lang/Math", "negateExact");
+                case Program.N2D -> unary(code, pc, "example/FixedPoint", "fromWhole");
+                case Program.D2N -> unary(code, pc, "example/FixedPoint", "toWhole");
+                case Program.JUMP -> {
+                    branches[branchCount] = size;
+                    branchTargets[branchCount++] = code[pc + 1];
+                    emit(GOTO);
+                    emitShort(0);
+                }
+                case Program.JUMP_IF_ZERO, Program.JUMP_IF_NONZERO -> {
+                    local(LLOAD, code[pc + 1]);
+                    emit(LCONST_0);
+                    emit(LCMP);
+                    branches[branchCount] = size;
+                    branchTargets[branchCount++] = code[pc + 2];
+                    emit(opcode == Program.JUMP_IF_ZERO ? IFEQ : IFNE);
+                    emitShort(0);
+                }
+                case Program.WRITE_N -> write(pc, code[pc + 1], "writeNum");
+                case Program.WRITE_D -> write(pc, code[pc + 1], "writeDec");
+                case Program.WRITE_B -> write(pc, code[pc + 1], "writeBool");
+                case Program.WRITE_C -> write(pc, code[pc + 1], "writeChar");
+                case Program.WRITE_S -> {
+                    storePc(pc);
+                    emit(ALOAD_1);
+                    emit(LDC_W);
+                    emitShort(classFile.string(program.strings[code[pc + 1]]));
+                    emit(INVOKEINTERFACE);
+                    emitShort(classFile.interfaceMethodRef(IO, "writeString", "(Ljava/lang/String;)V"));
+                    emit(2);
+                    emit(0);
+                }
+                case Program.READ_N -> read(pc, code[pc + 1], "readNum");
+                case Program.READ_D -> read(pc, code[pc + 1], "readDec");
+                case Program.READ_B -> read(pc, code[pc + 1], "readBool");
+                case Program.READ_C -> read(pc, code[pc + 1], "readChar");
+                default -> binary(code, pc);
+            }
+        }
+        addresses[code.length] = size;
+
+        // The handler: [error] -> located(error, pc), thrown.
+        int handler = size;
+        pcLocal(ILOAD);
+        emit(INVOKESTATIC);
+        emitShort(classFile.methodRef("example/ProgramJit", "located",
+            "(Ljava/lang/RuntimeException;I)Ljava/lang/RuntimeException;"));
+        emit(ATHROW);
+        if (size > 0xffff) return null;
+
+        for (int i = 0; i < branchCount; i++) {
+            int delta = addresses[branchTargets[i]] - branches[i];
+            if (delta != (short) delta) return null;
+            patchShort(branches[i] + 1, delta);
+        }
+        patchInt(defaultAt, addresses[0] - lookupswitch);
+        int pair = pairsAt;
+        for (int pc = entries.nextSetBit(0); pc >= 0; pc = entries.nextSetBit(pc + 1)) {
+            patchInt(pair + 4, addresses[pc] - lookupswitch);
+            pair += 8;
+        }
+
+        byte[] method = Arrays.copyOf(out, size);
+        int[] exceptionTable = {addresses[0], handler, handler, classFile.classRef(RUNTIME_EXCEPTION)};
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "run", RUN_DESCRIPTOR, 6, pcSlot + 1,
+            method, exceptionTable, stackMapTable(frames, addresses, registers, handler));
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, constructor(), null, null);
+        return classFile.toBytes(ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER, CLASS_NAME,
+            "java/lang/Object", COMPILED);
+    }
+
+    // One full frame, every local set, then the same frame again at each later address,
+    // and at the handler with the error on the stack.
+    private byte[] stackMapTable(BitSet frames, int[] addresses, int registers, int handler) {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        int count = 0;
+        int previous = -1;
+        for (int pc = frames.nextSetBit(0); pc >= 0; pc = frames.nextSetBit(pc + 1)) {
+            int address = addresses[pc];
+            if (address < 0 || address == previous) continue;
+            int delta = previous < 0 ? address : address - previous - 1;
+            if (count == 0) {
+                table.write(FULL_FRAME);
+                writeShort(table, delta);
+                writeShort(table, 4 + registers + 1);
+                table.write(ITEM_OBJECT);
+                writeShort(table, classFile.classRef(CLASS_NAME));
+                table.write(ITEM_OBJECT);
+                writeShort(table, classFile.classRef(IO));
+                table.write(ITEM_OBJECT);
+                writeShort(table, classFile.classRef("[J"));
+                table.write(ITEM_INTEGER);
+                for (int i = 0; i < registers; i++) table.write(ITEM_LONG);
+                table.write(ITEM_INTEGER);
+                writeShort(table, 0);
+            } else if (delta < 64) {
+                table.write(delta);
+            } else {
+                table.write(SAME_FRAME_EXTENDED);
+                writeShort(table, delta);
+            }
+            previous = address;
+            count++;
+        }
+        table.write(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+        writeShort(table, handler - previous - 1);
+        table.write(ITEM_OBJECT);
+        writeShort(table, classFile.classRef(RUNTIME_EXCEPTION));
+        count++;
+        byte[] entries = table.toByteArray();
+        byte[] body = new byte[2 + entries.length];
+        body[0] = (byte) (count >> 8);
+        body[1] = (byte) count;
+        System.arraycopy(entries, 0, body, 2, entries.length);
+        return body;
+    }
+
+    private byte[] constructor() {
+        int objectInit = classFile.methodRef("java/lang/Object", "<init>", "()V");
+        return new byte[] {
+            (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN
+        };
+    }
+
+    private void binary(int[] code, int pc) {
+        String owner;
+        String name;
+        switch (code[pc]) {
+            case Program.ADD_N, Program.ADD_D -> { owner = "java/lang/Math"; name = "addExact"; }
+            case Program.SUB_N, Program.SUB_D -> { owner = "java/lang/Math"; name = "subtractExact"; }
+            case Program.MUL_N -> { owner = "java/lang/Math"; name = "multiplyExact"; }
+            case Program.DIV_N -> { owner = "example/Interpreter"; name = "divide"; }
+            case Program.MOD_N -> { owner = "example/Interpreter"; name = "remainder"; }
+            case Program.POW_N -> { owner = "example/Interpreter"; name = "power"; }
+            case Program.MUL_D -> { owner = "example/FixedPoint"; name = "multiply"; }
+            case Program.DIV_D -> { owner = "example/FixedPoint"; name = "divide"; }
+            case Program.MOD_D -> { owner = "example/FixedPoint"; name = "remainder"; }
+            case Program.POW_D -> { owner = "example/FixedPoint"; name = "power"; }
+            default -> throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+        }
+        storePc(pc);
+        local(LLOAD, code[pc + 2]);
+        local(LLOAD, code[pc + 3]);
+        emit(INVOKESTATIC);
+        emitShort(classFile.methodRef(owner, name, "(JJ)J"));
+        local(LSTORE, code[pc + 1]);
+    }
+
+    private void unary(int[] code, int pc, String owner, String name) {
+        storePc(pc);
+        local(LLOAD, code[pc + 2]);
+        emit(INVOKESTATIC);
+        emitShort(classFile.methodRef(owner, name, "(J)J"));
+        local(LSTORE, code[pc + 1]);
+    }
+
+    private void write(int pc, int register, String name) {
+        storePc(pc);
+        emit(ALOAD_1);
+        local(LLOAD, register);
+        emit(INVOKEINTERFACE);
+        emitShort(classFile.interfaceMethodRef(IO, name, "(J)V"));
+        emit(3);
+        emit(0);
+    }
+
+    private void read(int pc, int register, String name) {
+        storePc(pc);
+        emit(ALOAD_1);
+        emit(INVOKEINTERFACE);
+        emitShort(classFile.interfaceMethodRef(IO, name, "()J"));
+        emit(1);
+        emit(0);
+        local(LSTORE, register);
+    }
+
+    private void storePc(int pc) {
+        pushInt(pc);
+        pcLocal(ISTORE);
+    }
+
+    // iload or istore of the pc local, wide past local 255.
+    private void pcLocal(int opcode) {
+        if (pcSlot <= 0xff) {
+            emit(opcode);
+            emit(pcSlot);
+        } else {
+            emit(WIDE);
+            emit(opcode);
+            emitShort(pcSlot);
+        }
+    }
+
+    // lload or lstore of a register, wide past local 255.
+    private void local(int opcode, int register) {
+        int slot = FIRST_REGISTER + 2 * register;
+        if (slot <= 0xff) {
+            emit(opcode);
+            emit(slot);
+        } else {
+            emit(WIDE);
+            emit(opcode);
+            emitShort(slot);
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value <= Short.MAX_VALUE) {
+            emit(SIPUSH);
+            emitShort(value);
+        } else {
+            emit(LDC_W);
+            emitShort(classFile.integer(value));
+        }
+    }
+
+    private void emit(int b) {
+        if (size == out.length) out = Arrays.copyOf(out, size * 2);
+        out[size++] = (byte) b;
+    }
+
+    private void emitShort(int value) {
+        emit(value >> 8);
+        emit(value);
+    }
+
+    private void emitInt(int value) {
+        emitShort(value >> 16);
+        emitShort(value);
+    }
+
+    private void patchShort(int at, int value) {
+        out[at] = (byte) (value >> 8);
+        out[at + 1] = (byte) value;
+    }
+
+    private void patchInt(int at, int value) {
+        patchShort(at, value >> 16);
+        patchShort(at + 2, value);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
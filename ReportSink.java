@@ -0,0 +1,160 @@
+package example;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Where one unit's report goes. Sections arrive in order (source, tokens, automata,
+// symbol table, syntax tree) and each can be switched off; the sink writes what it receives to a
+// single buffered writer in its format. Closing flushes the writer but leaves the
+// underlying stream open, since that is usually System.out.
+abstract class ReportSink implements Closeable {
+    enum Format { TEXT, DOT, JSONL }
+    enum Section { SOURCE, TOKENS, NFA, DFA, SYMBOLS, AST }
+
+    // The default report; the syntax tree is only parsed and shown on request.
+    static final Set<Section> ALL_SECTIONS = EnumSet.range(Section.SOURCE, Section.SYMBOLS);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final Writer out;
+    private final Set<Section> sections;
+    private AutomataCache diskCache;
+    private int tokenIndex;
+
+    protected ReportSink(Writer out, Set<Section> sections) {
+        this.out = out;
+        this.sections = EnumSet.noneOf(Section.class);
+        this.sections.addAll(sections);
+    }
+
+    static ReportSink open(Format format, Set<Section> sections, OutputStream stream) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()), BUFFER_SIZE);
+        return switch (format) {
+            case TEXT -> new TextSink(out, sections);
+            case DOT -> new DotSink(out, sections);
+            case JSONL -> new JsonLinesSink(out, sections);
+        };
+    }
+
+    // Where automata not built in this JVM yet are looked for and kept, for this sink's
+    // unit only. Null, the default, builds them in memory.
+    ReportSink diskCache(AutomataCache cache) {
+        this.diskCache = cache;
+        return this;
+    }
+
+    final boolean shows(Section section) {
+        return sections.contains(section);
+    }
+
+    public final void source(CharSequence source) {
+        if (!shows(Section.SOURCE)) return;
+        try {
+            writeSource(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public final void beginTokens() {
+        if (!shows(Section.TOKENS)) return;
+        try {
+            writeTokensHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public final void token(Token token) {
+        int index = tokenIndex++;
+        if (!shows(Section.TOKENS)) return;
+        try {
+            writeToken(index, token);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public final void tokens(List<Token> tokens) {
+        beginTokens();
+        for (Token token : tokens) {
+            token(token);
+        }
+    }
+
+    public final void automata(List<Token> tokens) {
+        if (beginAutomata()) {
+            AutomataVisualizer.forEachDistinct(tokens, this::automaton);
+        }
+    }
+
+    public final void automata(TokenBuffer tokens) {
+        if (beginAutomata()) {
+            AutomataVisualizer.forEachDistinct(tokens, this::automaton);
+        }
+    }
+
+    public final void symbols(SymbolTable table) {
+        if (!shows(Section.SYMBOLS)) return;
+        try {
+            writeSymbols(table.entries());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // lines, if not null, is the unit's, to place error nodes by line and column.
+    public final void ast(Ast ast, LineIndex lines) {
+        if (!shows(Section.AST)) return;
+        try {
+            writeAst(ast, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private boolean beginAutomata() {
+        if (!shows(Section.NFA) && !shows(Section.DFA)) return false;
+        try {
+            writeAutomataHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private void automaton(Token token) {
+        StateTrace trace = token.getTrace();
+        if (trace == null || trace.size() == 0) return;
+        try {
+            writeAutomaton(token, trace, shows(Section.NFA), shows(Section.DFA));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected final AutomataVisualizer.Automaton automatonOf(Token token, StateTrace trace) {
+        return AutomataVisualizer.automaton(token.getType(), trace, diskCache);
+    }
+
+    protected abstract void writeSource(CharSequence source) throws IOException;
+    protected abstract void writeTokensHeader() throws IOException;
+    protected abstract void writeToken(int index, Token token) throws IOException;
+    protected abstract void writeAutomataHeader() throws IOException;
+    protected abstract void writeAutomaton(Token token, StateTrace trace, boolean nfa, boolean dfa) throws IOException;
+    protected abstract void writeSymbols(List<SymbolTableEntry> entries) throws IOException;
+    protected abstract void writeAst(Ast ast, LineIndex lines) throws IOException;
+}
@@ -0,0 +1,77 @@
+package example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// Refillable window over a Reader. Indices are absolute offsets into the stream and
+// length() is the end of what has been read so far. Only the part from the oldest
+// position the lexer still needs is kept; the buffer grows only when a single token
+// is longer than it.
+final class SourceWindow implements CharSequence {
+    private final Reader reader;
+    private char[] buffer;
+    private int base;
+    private int count;
+    private boolean eof;
+
+    public SourceWindow(Reader reader, int capacity) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(capacity, 1)];
+        this.base = 0;
+        this.count = 0;
+        this.eof = false;
+    }
+
+    // Drops everything before keepFrom and reads more. Returns false at end of input.
+    public boolean refill(int keepFrom) {
+        if (eof) return false;
+        int drop = Math.min(keepFrom - base, count);
+        if (drop > 0) {
+            System.arraycopy(buffer, drop, buffer, 0, count - drop);
+            base += drop;
+            count -= drop;
+        }
+        if (count == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            int read;
+            do {
+                read = reader.read(buffer, count, buffer.length - count);
+            } while (read == 0);
+            if (read < 0) {
+                eof = true;
+                reader.close();
+                return false;
+            }
+            count += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int capacity() { return buffer.length; }
+
+    @Override
+    public char charAt(int index) {
+        return buffer[index - base];
+    }
+
+    @Override
+    public int length() {
+        return base + count;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buffer, start - base, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count);
+    }
+}
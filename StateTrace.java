@@ -0,0 +1,46 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Compact record of the states a token passed through. The lexer hands out state ids
+// consecutively, so the path is its first id plus the transition char of every state.
+final class StateTrace {
+    private final int firstId;
+    private final char[] symbols;
+    private final boolean lastFinal;
+    private final boolean linked;
+
+    public StateTrace(int firstId, char[] symbols, boolean lastFinal, boolean linked) {
+        this.firstId = firstId;
+        this.symbols = symbols;
+        this.lastFinal = lastFinal;
+        this.linked = linked;
+    }
+
+    public int size() { return symbols.length; }
+    public int stateId(int index) { return firstId + index; }
+    public char symbol(int index) { return symbols[index]; }
+    public boolean isFinal(int index) { return lastFinal && index == symbols.length - 1; }
+    public String pattern() { return new String(symbols); }
+    public boolean isLinked() { return linked; }
+
+    public StateTrace shifted(int delta) {
+        return new StateTrace(firstId + delta, symbols, lastFinal, linked);
+    }
+
+    // Rebuilds the State objects the visualizer works on. Character literals chain
+    // their states with explicit transitions after the initial state.
+    public List<State> toStates() {
+        List<State> states = new ArrayList<>(symbols.length);
+        for (int i = 0; i < symbols.length; i++) {
+            states.add(new State(stateId(i), isFinal(i), symbols[i]));
+        }
+        if (linked) {
+            for (int i = 1; i + 1 < symbols.length; i++) {
+                states.get(i).addTransition(symbols[i + 1], states.get(i + 1));
+            }
+        }
+        return states;
+    }
+}
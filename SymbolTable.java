@@ -1,77 +1,188 @@
 package example;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+// One entry per distinct symbol. Identifiers live in nested scopes that follow the
+// braces in the token stream and are resolved outwards from the current scope; every
+// other symbol is keyed by its type and name. Repeats only bump the entry's count.
 class SymbolTable {
-    private List<SymbolTableEntry> table;
+    private final List<SymbolTableEntry> table;
+    private final Map<String, Map<String, SymbolTableEntry>> symbols;
+    private Scope scope;
 
     public SymbolTable() {
         this.table = new ArrayList<>();
+        this.symbols = new HashMap<>();
+        this.scope = new Scope(null);
     }
 
     public void addEntry(String name, String type, String scope, String value) {
-        table.add(new SymbolTableEntry(name, type, scope, value));
+        Map<String, SymbolTableEntry> names = symbols.computeIfAbsent(type, k -> new HashMap<>());
+        SymbolTableEntry entry = names.get(name);
+        if (entry == null) {
+            entry = new SymbolTableEntry(name, type, scope, value);
+            names.put(name, entry);
+            table.add(entry);
+        }
+        entry.occurrences++;
+    }
+
+    // A name not visible from the current scope is declared in it.
+    public void addIdentifier(String name, String scope) {
+        SymbolTableEntry entry = lookup(name);
+        if (entry == null) {
+            entry = new SymbolTableEntry(name, "Identifier", scope, "-");
+            this.scope.names.put(name, entry);
+            table.add(entry);
+        }
+        entry.occurrences++;
+    }
+
+    // Declares name in the current scope even where an outer scope has it, as a
+    // declaration statement does; addIdentifier would find the outer entry instead.
+    public SymbolTableEntry declare(String name, String type, String scope, String value) {
+        SymbolTableEntry entry = new SymbolTableEntry(name, type, scope, value);
+        this.scope.names.put(name, entry);
+        table.add(entry);
+        entry.occurrences++;
+        return entry;
+    }
+
+    // Whether name was declared in the current scope itself rather than an outer one.
+    public boolean isDeclaredHere(String name) {
+        return scope.names.containsKey(name);
+    }
+
+    // Takes back an entry from an earlier build, occurrences and all. Restored identifiers
+    // land in the current scope, which after a whole unit is the global one again.
+    public void restore(SymbolTableEntry entry) {
+        if ("Identifier".equals(entry.type)) {
+            scope.names.putIfAbsent(entry.name, entry);
+        } else {
+            symbols.computeIfAbsent(entry.type, k -> new HashMap<>()).putIfAbsent(entry.name, entry);
+        }
+        table.add(entry);
+    }
+
+    public void enterScope() {
+        scope = new Scope(scope);
+    }
+
+    // Like the lexer's scope depth, a stray closing brace leaves the global scope open.
+    public void exitScope() {
+        if (scope.parent != null) {
+            scope = scope.parent;
+        }
+    }
+
+    public SymbolTableEntry lookup(String name) {
+        for (Scope s = scope; s != null; s = s.parent) {
+            SymbolTableEntry entry = s.names.get(name);
+            if (entry != null) return entry;
+        }
+        return null;
+    }
+
+    public SymbolTableEntry lookup(String type, String name) {
+        Map<String, SymbolTableEntry> names = symbols.get(type);
+        return names == null ? null : names.get(name);
+    }
+
+    public int size() {
+        return table.size();
     }
 
     public void populateFromTokens(List<Token> tokens) {
         for (Token token : tokens) {
-            switch (token.getType()) {
+            addToken(token);
+        }
+    }
+
+    // Reads the columns directly; only null entries are turned into (null) Tokens, which
+    // fail just as they do in the list version.
+    public void populateFromTokens(TokenBuffer tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.isNull(i)) {
+                addToken(tokens.get(i));
+            } else {
+                addToken(tokens.type(i), tokens.value(i), tokens.scope(i));
+            }
+        }
+    }
+
+    public void addToken(Token token) {
+        addToken(token.getType(), token.getValue(), token.getScope());
+    }
+
+    public void addToken(int type, String value, String scope) {
+        switch (type) {
 	            case Token.DATATYPE:
-	                addEntry(token.getValue(), "DATATYPE", "Global", "-");
+	                addEntry(value, "DATATYPE", "Global", "-");
 	                break;
-                case Token.KEYWORD:
-                    addEntry(token.getValue(), "Keyword", "Global", "-");
-                    break;
-                case Token.IDENTIFIER:
-                    addEntry(token.getValue(), "Identifier", token.getScope(), "-");
-                    break;
-                case Token.INTEGER:
-                    addEntry(token.getValue(), "Integer", "Constant", token.getValue());
-                    break;
-                case Token.DECIMAL:
-                    addEntry(token.getValue(), "Decimal", "Constant", token.getValue());
-                    break;
-                case Token.BOOLEAN:
-                    addEntry(token.getValue(), "Boolean", "Constant", token.getValue());
-                    break;
-                case Token.STRING:
-                    addEntry(token.getValue(), "String", "Global", token.getValue());
-                    break;
-                case Token.OPERATOR:
-                    addEntry(token.getValue(), "Operator", "Global", "-");
-                    break;
-                case Token.CHARACTER:
-                    addEntry(token.getValue(), "CHARACTER", "Local", "-");
-                    break;
-                case Token.PUNCTUATOR:
-                    addEntry(token.getValue(), "Punctuator", "Global", "-");
-                    break;
-                case Token.OUTPUT:
-                    addEntry(token.getValue(), "OUTPUT", "Global", "-");
-                    break;
-                case Token.INPUT:
-                    addEntry(token.getValue(), "INPUT", "Global", "-");
-                    break;
-                case Token.EOF:
-                    
-                    break;
-                default:
-                    addEntry(token.getValue(), "Unknown", "Unknown", "-");
-                    break;
-            }
+            case Token.KEYWORD:
+                addEntry(value, "Keyword", "Global", "-");
+                break;
+            case Token.IDENTIFIER:
+                addIdentifier(value, scope);
+                break;
+            case Token.INTEGER:
+                addEntry(value, "Integer", "Constant", value);
+                break;
+            case Token.DECIMAL:
+                addEntry(value, "Decimal", "Constant", value);
+                break;
+            case Token.BOOLEAN:
+                addEntry(value, "Boolean", "Constant", value);
+                break;
+            case Token.STRING:
+                addEntry(value, "String", "Global", value);
+                break;
+            case Token.OPERATOR:
+                addEntry(value, "Operator", "Global", "-");
+                break;
+            case Token.CHARACTER:
+                addEntry(value, "CHARACTER", "Local", "-");
+                break;
+            case Token.PUNCTUATOR:
+                addEntry(value, "Punctuator", "Global", "-");
+                if (value.equals("{")) {
+                    enterScope();
+                } else if (value.equals("}")) {
+                    exitScope();
+                }
+                break;
+            case Token.OUTPUT:
+                addEntry(value, "OUTPUT", "Global", "-");
+                break;
+            case Token.INPUT:
+                addEntry(value, "INPUT", "Global", "-");
+                break;
+            case Token.EOF:
+                
+                break;
+            case Token.ERROR:
+                break;
+            default:
+                addEntry(value, "Unknown", "Unknown", "-");
+                break;
         }
     }
 
-    public void printTable() {
-        System.out.println("\nSymbol Table:");
-        System.out.println("---------------------------------------------------");
-        System.out.println("| Name       | Type       | Scope    | Value      |");
-        System.out.println("---------------------------------------------------");
-        for (SymbolTableEntry entry : table) {
-            System.out.printf("| %-10s | %-10s | %-8s | %-10s |\n",
-                entry.name, entry.type, entry.scope, entry.value);
+    // Distinct symbols in order of first occurrence.
+    public List<SymbolTableEntry> entries() {
+        return Collections.unmodifiableList(table);
+    }
+
+    private static final class Scope {
+        final Scope parent;
+        final Map<String, SymbolTableEntry> names = new HashMap<>();
+
+        Scope(Scope parent) {
+            this.parent = parent;
         }
-        System.out.println("---------------------------------------------------");
     }
 }
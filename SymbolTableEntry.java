@@ -5,6 +5,9 @@ class SymbolTableEntry {
     String type;
     String scope;
     String value;
+    int occurrences;
+    // The register ProgramCompiler keeps a variable in; -1 for every other entry.
+    int register = -1;
 
     public SymbolTableEntry(String name, String type, String scope, String value) {
         this.name = name;
@@ -15,7 +18,7 @@ class SymbolTableEntry {
 
     @Override
     public String toString() {
-        return "Name: " + name + ", Type: " + type + ", Scope: " + scope + ", Value: " + value;
+        return "Name: " + name + ", Type: " + type + ", Scope: " + scope + ", Value: " + value + ", Occurrences: " + occurrences;
     }
 }
 
@@ -0,0 +1,116 @@
+package example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+// The human-readable report main has always printed.
+final class TextSink extends ReportSink {
+    private static final String RULE = "─".repeat(40);
+    private static final String WIDE_RULE = "─".repeat(50);
+    private static final String TABLE_RULE = "-".repeat(59);
+
+    TextSink(Writer out, Set<Section> sections) {
+        super(out, sections);
+    }
+
+    @Override
+    protected void writeSource(CharSequence source) throws IOException {
+        out.write("Source Code:\n");
+        out.write(RULE);
+        out.write('\n');
+        out.append(source);
+        out.write('\n');
+    }
+
+    @Override
+    protected void writeTokensHeader() throws IOException {
+        out.write("\nTokens:\n");
+        out.write(RULE);
+        out.write('\n');
+    }
+
+    @Override
+    protected void writeToken(int index, Token token) throws IOException {
+        out.write(String.valueOf(token));
+        out.write('\n');
+    }
+
+    @Override
+    protected void writeAutomataHeader() throws IOException {
+        out.write("\n=== Complete Lexical Analysis Automata ===\n\n");
+    }
+
+    @Override
+    protected void writeAutomaton(Token token, StateTrace trace, boolean nfa, boolean dfa) throws IOException {
+        String value = token.getValue();
+        out.write("\n=== Token: " + value + " (" + AutomataVisualizer.getTokenTypeName(token.getType()) + ") ===\n\n");
+
+        if (nfa) {
+            out.write("NFA States and Transitions:\n");
+            out.write(WIDE_RULE);
+            out.write('\n');
+            StringBuilder states = new StringBuilder();
+            for (int i = 0; i < trace.size(); i++) {
+                states.append('q').append(trace.stateId(i))
+                    .append(" [").append(i < value.length() ? value.charAt(i) : '-').append(']')
+                    .append(trace.isFinal(i) ? " (Final)" : "").append('\n');
+                AutomataVisualizer.nfaEdges(trace, i, (symbol, target) ->
+                    states.append(AutomataVisualizer.VERTICAL).append(AutomataVisualizer.HORIZONTAL)
+                        .append(" -").append(AutomataVisualizer.label(symbol)).append("→ q").append(target).append('\n'));
+            }
+            out.append(states);
+        }
+
+        if (dfa) {
+            out.write("\nDFA States and Transitions:\n");
+            out.write(WIDE_RULE);
+            out.write('\n');
+            out.write(automatonOf(token, trace).text);
+        }
+    }
+
+    @Override
+    protected void writeSymbols(List<SymbolTableEntry> entries) throws IOException {
+        out.write("\nSymbol Table:\n");
+        out.write(TABLE_RULE);
+        out.write("\n| Name       | Type       | Scope    | Value      | Count |\n");
+        out.write(TABLE_RULE);
+        out.write('\n');
+        for (SymbolTableEntry entry : entries) {
+            out.write(String.format("| %-10s | %-10s | %-8s | %-10s | %5d |\n",
+                entry.name, entry.type, entry.scope, entry.value, entry.occurrences));
+        }
+        out.write(TABLE_RULE);
+        out.write('\n');
+    }
+
+    // One node per line, indented by depth: kind, value, and for errors where they are,
+    // as line:column if the lines are known and as an offset otherwise.
+    @Override
+    protected void writeAst(Ast ast, LineIndex lines) throws IOException {
+        out.write("\nSyntax Tree:\n");
+        out.write(RULE);
+        out.write('\n');
+        StringBuilder tree = new StringBuilder(ast.size() * 16);
+        ast.walk((node, parent, depth) -> {
+            tree.append("  ".repeat(depth)).append(Ast.kindName(ast.kind(node)));
+            String value = ast.value(node);
+            if (value != null) tree.append(' ').append(value);
+            int offset = ast.offset(node);
+            if (ast.kind(node) == Ast.ERROR && offset >= 0) {
+                if (lines == null) {
+                    tree.append(" at offset ").append(offset);
+                } else {
+                    tree.append(" at ").append(lines.line(offset)).append(':').append(lines.column(offset));
+                }
+            }
+            tree.append('\n');
+        });
+        out.append(tree);
+        if (ast.errors() > 0) {
+            out.write(ast.errors() + (ast.errors() == 1 ? " syntax error\n" : " syntax errors\n"));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package example;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 
 class Token {
@@ -16,28 +18,86 @@ class Token {
     public static final int OPERATOR = 8;
     public static final int PUNCTUATOR = 9;
     public static final int EOF = 0;
+    // Text a recovering Lexer could not make a token of; see Diagnostics.
+    public static final int ERROR = 13;
     
     private int type;
     private String value;
-    private List<State> statePath;
+    private CharSequence source;
+    private int offset;
+    private int length;
+    private StateTrace trace;
     private String scope;
+    private long fixed = FixedPoint.OVERFLOW;
 
-    public Token(int type, String value, List<State> statePath, String scope) {
+    public Token(int type, String value, StateTrace trace, String scope) {
         this.type = type;
         this.value = value;
-        this.statePath = statePath;
+        this.offset = -1;
+        this.trace = trace;
         this.scope = scope;
     }
-    public Token(int type, String value, List<State> statePath) {
-        this(type, value, statePath, "Global");
+    public Token(int type, String value, StateTrace trace, String scope, int offset) {
+        this(type, value, trace, scope);
+        this.offset = offset;
+    }
+    // The value is the text at [offset, offset + length) of source, copied out on first use.
+    public Token(int type, CharSequence source, int offset, int length, StateTrace trace, String scope) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.trace = trace;
+        this.scope = scope;
+    }
+    public Token(int type, String value, StateTrace trace) {
+        this(type, value, trace, "Global");
     }
 
     public int getType() { return type; }
-    public String getValue() { return value; }
-    public List<State> getStatePath() { return statePath; }
+    public String getValue() {
+        if (value == null && source != null) {
+            value = source.subSequence(offset, offset + length).toString();
+            source = null;
+        }
+        return value;
+    }
+    // KEYWORD, DATATYPE or BOOLEAN if the text is a reserved word, IDENTIFIER otherwise.
+    // Read from the source range while the text has not been copied out.
+    int reservedType() {
+        if (value == null && source != null) {
+            return length == 0 ? IDENTIFIER : Keywords.classify(source, offset, offset + length);
+        }
+        return value == null || value.isEmpty() ? IDENTIFIER : Keywords.classify(value, 0, value.length());
+    }
+    // Where the token starts in its source, for CHARACTER and STRING tokens where the
+    // text inside the quotes does; -1 for tokens a Lexer did not make. Lexer.lines()
+    // turns it into a line and column.
+    public int getOffset() { return offset; }
+    public StateTrace getTrace() { return trace; }
+    public List<State> getStatePath() { return trace == null ? new ArrayList<>() : trace.toStates(); }
     public String getScope() {return scope;}
 
-    private String getTypeName() {
+    // INTEGER and DECIMAL tokens carry their value as a FixedPoint long, unless it did not
+    // fit one; then and for every other token this is negative.
+    public long getFixed() { return fixed; }
+    void setFixed(long fixed) { this.fixed = fixed; }
+
+    // The literal's value to SCALE places, or null for a token that is not a number.
+    public BigDecimal getNumber() {
+        if (type != INTEGER && type != DECIMAL) return null;
+        return fixed >= 0 ? FixedPoint.decimal(fixed) : FixedPoint.decimal(getValue());
+    }
+
+    // Used by ParallelLexer once a chunk's place in the whole stream is known.
+    void setScope(String scope) { this.scope = scope; }
+    // Used by IncrementalLexer for tokens whose text has already been copied out.
+    void setOffset(int offset) { this.offset = offset; }
+    void shiftStates(int delta) {
+        if (trace != null && delta != 0) trace = trace.shifted(delta);
+    }
+
+    String getTypeName() {
         return switch (type) {
             case KEYWORD -> "KEYWORD";
             case DATATYPE -> "DATATYPE";
@@ -52,6 +112,7 @@ class Token {
             case INPUT -> "INPUT";
             case OUTPUT -> "OUTPUT";
             case EOF -> "EOF";
+            case ERROR -> "ERROR";
             default -> "UNKNOWN";
         };
     }
@@ -59,11 +120,12 @@ class Token {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Token{").append(getTypeName()).append(" (").append(type).append(")").append(", value='").append(value).append("', states=[ (Start)");
-        for (State state : statePath) {
-            sb.append("(State ").append(state.id).append(" -> '").append(state.transitionChar).append("'), ");
+        sb.append("Token{").append(getTypeName()).append(" (").append(type).append(")").append(", value='").append(getValue()).append("', states=[ (Start)");
+        int states = trace == null ? 0 : trace.size();
+        for (int i = 0; i < states; i++) {
+            sb.append("(State ").append(trace.stateId(i)).append(" -> '").append(trace.symbol(i)).append("'), ");
         }
-        if (!statePath.isEmpty()) sb.setLength(sb.length() - 2);
+        if (states > 0) sb.setLength(sb.length() - 2);
         sb.append("](Final)}");
         return sb.toString();
     }
@@ -0,0 +1,299 @@
+package example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Tokens stored column by column instead of as objects. Each page holds PAGE tokens as
+// one int column per field, values are interned and referred to by id, and state paths
+// share a pool of symbol pages. Pages can live off-heap. Lexer fills the buffer without
+// creating Token objects; get() builds a Token view on demand.
+final class TokenBuffer extends AbstractList<Token> {
+    enum Storage { HEAP, OFF_HEAP }
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE = 1 << PAGE_SHIFT;
+    private static final int SYMBOL_PAGE = 16 * 1024;
+
+    private static final int TYPE = 0;
+    private static final int START = 1;
+    private static final int LENGTH = 2;
+    private static final int VALUE = 3;
+    private static final int FLAGS = 4;
+    private static final int FIRST_STATE = 5;
+    private static final int SYMBOL_PAGE_INDEX = 6;
+    private static final int SYMBOL_OFFSET = 7;
+    private static final int SYMBOL_COUNT = 8;
+    private static final int COLUMNS = 9;
+
+    // FLAGS holds the scope id + 1 (0 for none) in its low byte.
+    private static final int SCOPE_MASK = 0xff;
+    private static final int TRACED = 1 << 8;
+    private static final int LAST_FINAL = 1 << 9;
+    private static final int LINKED = 1 << 10;
+    private static final int NULL_TOKEN = 1 << 11;
+
+    private final Storage storage;
+    private IntBuffer[] pages = new IntBuffer[8];
+    private int size;
+
+    private final List<CharBuffer> symbolPages = new ArrayList<>();
+    private int symbolUsed = SYMBOL_PAGE;
+
+    private final List<String> scopes = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+    private int[] valueSlots = new int[1024];
+    // Fixed-point values of numeric literals by value id, since equal text means an equal
+    // number; FixedPoint.OVERFLOW where there is none.
+    private long[] numbers = new long[0];
+
+    public TokenBuffer() {
+        this(Storage.HEAP);
+    }
+
+    public TokenBuffer(Storage storage) {
+        this.storage = storage;
+        Arrays.fill(valueSlots, -1);
+    }
+
+    @Override
+    public int size() { return size; }
+
+    public boolean isNull(int index) { return (column(index, FLAGS) & NULL_TOKEN) != 0; }
+
+    // Like the Token getters, these throw for the null entries Lexer adds for bad
+    // character literals.
+    public int type(int index) { return present(index, TYPE); }
+    public int valueId(int index) { return present(index, VALUE); }
+    public String value(int index) { return values.get(valueId(index)); }
+    public String valueOf(int valueId) { return values.get(valueId); }
+
+    // Source offset of the token, as Token.getOffset(), and the length of its lexeme, or
+    // -1 for tokens that were added as objects.
+    public int start(int index) { return column(index, START); }
+    public int length(int index) { return column(index, LENGTH); }
+
+    public String scope(int index) {
+        int scope = present(index, FLAGS) & SCOPE_MASK;
+        return scope == 0 ? null : scopes.get(scope - 1);
+    }
+
+    public boolean hasTrace(int index) { return (column(index, FLAGS) & TRACED) != 0; }
+
+    public String pattern(int index) {
+        if (!hasTrace(index)) return "";
+        CharBuffer page = symbolPages.get(column(index, SYMBOL_PAGE_INDEX));
+        int offset = column(index, SYMBOL_OFFSET);
+        return page.subSequence(offset, offset + column(index, SYMBOL_COUNT)).toString();
+    }
+
+    public int traceSize(int index) {
+        return hasTrace(index) ? column(index, SYMBOL_COUNT) : 0;
+    }
+
+    // See Token.getFixed().
+    public long fixed(int index) {
+        int type = type(index);
+        if (type != Token.INTEGER && type != Token.DECIMAL) return FixedPoint.OVERFLOW;
+        int id = valueId(index);
+        return id < numbers.length ? numbers[id] : FixedPoint.OVERFLOW;
+    }
+
+    public StateTrace trace(int index) {
+        if (!hasTrace(index)) return null;
+        char[] symbols = new char[column(index, SYMBOL_COUNT)];
+        symbolPages.get(column(index, SYMBOL_PAGE_INDEX)).get(column(index, SYMBOL_OFFSET), symbols);
+        int flags = column(index, FLAGS);
+        return new StateTrace(column(index, FIRST_STATE), symbols, (flags & LAST_FINAL) != 0, (flags & LINKED) != 0);
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        if (isNull(index)) return null;
+        Token token = new Token(type(index), value(index), trace(index), scope(index), start(index));
+        token.setFixed(fixed(index));
+        return token;
+    }
+
+    @Override
+    public boolean add(Token token) {
+        int index = append();
+        if (token == null) {
+            set(index, FLAGS, NULL_TOKEN);
+            return true;
+        }
+        set(index, TYPE, token.getType());
+        set(index, START, token.getOffset());
+        set(index, LENGTH, -1);
+        set(index, VALUE, intern(token.getValue()));
+        set(index, FLAGS, scopeId(token.getScope()));
+        if (token.getFixed() >= 0) fixed(token.getFixed());
+        StateTrace trace = token.getTrace();
+        if (trace != null) {
+            char[] symbols = new char[trace.size()];
+            for (int i = 0; i < symbols.length; i++) symbols[i] = trace.symbol(i);
+            trace(trace.stateId(0), symbols, symbols.length, trace.size() > 0 && trace.isFinal(trace.size() - 1), trace.isLinked());
+        }
+        return true;
+    }
+
+    // Adds the lexeme at [start, start + length) of source. Its text is the value unless
+    // one is given, e.g. the normalized form of a decimal.
+    void add(int type, CharSequence source, int start, int length, String value, String scope) {
+        int index = append();
+        set(index, TYPE, type);
+        set(index, START, start);
+        set(index, LENGTH, length);
+        set(index, VALUE, value != null ? intern(value) : intern(source, start, start + length));
+        set(index, FLAGS, scopeId(scope));
+    }
+
+    // Attaches a literal's fixed-point value to the token added last.
+    void fixed(long fixed) {
+        int id = column(size - 1, VALUE);
+        if (id >= numbers.length) {
+            int length = numbers.length;
+            numbers = Arrays.copyOf(numbers, Math.max(id + 1, length * 2));
+            Arrays.fill(numbers, length, numbers.length, FixedPoint.OVERFLOW);
+        }
+        numbers[id] = fixed;
+    }
+
+    // Attaches a state path to the token added last.
+    void trace(int firstState, char[] symbols, int count, boolean lastFinal, boolean linked) {
+        int index = size - 1;
+        if (symbolUsed + count > SYMBOL_PAGE || symbolPages.isEmpty()) {
+            symbolPages.add(allocateChars(Math.max(SYMBOL_PAGE, count)));
+            symbolUsed = 0;
+        }
+        CharBuffer page = symbolPages.get(symbolPages.size() - 1);
+        page.put(symbolUsed, symbols, 0, count);
+        set(index, FIRST_STATE, firstState);
+        set(index, SYMBOL_PAGE_INDEX, symbolPages.size() - 1);
+        set(index, SYMBOL_OFFSET, symbolUsed);
+        set(index, SYMBOL_COUNT, count);
+        set(index, FLAGS, column(index, FLAGS) | TRACED | (lastFinal ? LAST_FINAL : 0) | (linked ? LINKED : 0));
+        // A page that cannot fit the next path is simply left with its tail unused.
+        symbolUsed = page.capacity() > SYMBOL_PAGE ? page.capacity() : symbolUsed + count;
+    }
+
+    private int append() {
+        int page = size >>> PAGE_SHIFT;
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+        }
+        if (pages[page] == null) {
+            pages[page] = allocateInts(PAGE * COLUMNS);
+        }
+        int index = size++;
+        for (int column = 0; column < COLUMNS; column++) {
+            set(index, column, 0);
+        }
+        return index;
+    }
+
+    private IntBuffer allocateInts(int count) {
+        if (storage == Storage.OFF_HEAP) {
+            return ByteBuffer.allocateDirect(count * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(count);
+    }
+
+    private CharBuffer allocateChars(int count) {
+        if (storage == Storage.OFF_HEAP) {
+            return ByteBuffer.allocateDirect(count * Character.BYTES).order(ByteOrder.nativeOrder()).asCharBuffer();
+        }
+        return CharBuffer.allocate(count);
+    }
+
+    private int column(int index, int column) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return pages[index >>> PAGE_SHIFT].get(column * PAGE + (index & (PAGE - 1)));
+    }
+
+    private int present(int index, int column) {
+        if (isNull(index)) throw new NullPointerException("Token " + index + " is null");
+        return column(index, column);
+    }
+
+    private void set(int index, int column, int value) {
+        pages[index >>> PAGE_SHIFT].put(column * PAGE + (index & (PAGE - 1)), value);
+    }
+
+    private int scopeId(String scope) {
+        if (scope == null) return 0;
+        int id = scopes.indexOf(scope);
+        if (id < 0) {
+            id = scopes.size();
+            scopes.add(scope);
+        }
+        return id + 1;
+    }
+
+    // Open addressing over value ids. Lexemes are looked up straight from the source, so
+    // a String is only created the first time a value is seen.
+    private int intern(CharSequence source, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int mask = valueSlots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = valueSlots[slot];
+            if (id < 0) {
+                return insert(slot, source.subSequence(from, to).toString());
+            }
+            if (matches(values.get(id), source, from, to)) {
+                return id;
+            }
+        }
+    }
+
+    private int intern(String value) {
+        int mask = valueSlots.length - 1;
+        for (int slot = mix(value.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int id = valueSlots[slot];
+            if (id < 0) {
+                return insert(slot, value);
+            }
+            if (values.get(id).equals(value)) {
+                return id;
+            }
+        }
+    }
+
+    private int insert(int slot, String value) {
+        int id = values.size();
+        values.add(value);
+        valueSlots[slot] = id;
+        if (values.size() * 2 > valueSlots.length) {
+            valueSlots = new int[valueSlots.length * 2];
+            Arrays.fill(valueSlots, -1);
+            int mask = valueSlots.length - 1;
+            for (int i = 0; i < values.size(); i++) {
+                int s = mix(values.get(i).hashCode()) & mask;
+                while (valueSlots[s] >= 0) s = (s + 1) & mask;
+                valueSlots[s] = i;
+            }
+        }
+        return id;
+    }
+
+    private static boolean matches(String value, CharSequence source, int from, int to) {
+        if (value.length() != to - from) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != source.charAt(from + i)) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,184 @@
+package example;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A cursor over a stream TokenStreamWriter wrote, read in place from a ByteBuffer such
+// as a mapped file. next() moves from token to token; strings stay bytes in the buffer
+// until value() or scope() asks for them, and are then decoded once per distinct string.
+// State paths are only decoded by trace() or token().
+final class TokenStreamReader {
+    private final ByteBuffer in;
+    private final boolean traces;
+    private int[] stringStart = new int[256];
+    private int[] stringLength = new int[256];
+    private String[] decoded = new String[256];
+    private int strings;
+    private boolean ended;
+
+    private boolean isNull;
+    private int type;
+    private int offset;
+    private int value;
+    private int scope;
+    private int traceSize;
+    private int traceAt;
+
+    TokenStreamReader(ByteBuffer buffer) throws IOException {
+        this.in = buffer.slice();
+        try {
+            int magic = in.getInt();
+            if (magic != TokenStreamWriter.MAGIC) throw new IOException("Not a token stream");
+            int version = readVarint();
+            if (version != TokenStreamWriter.VERSION) throw new IOException("Unsupported token stream version " + version);
+            this.traces = (readVarint() & TokenStreamWriter.TRACES) != 0;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Not a token stream", e);
+        }
+    }
+
+    // Maps the file; the mapping lives as long as the reader does.
+    static TokenStreamReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new TokenStreamReader(buffer);
+        }
+    }
+
+    // Whether state paths were written at all.
+    boolean hasTraces() {
+        return traces;
+    }
+
+    // Moves to the next token. False once the stream has ended.
+    boolean next() throws IOException {
+        if (ended) return false;
+        try {
+            int tag = readVarint();
+            if (tag == TokenStreamWriter.END) {
+                ended = true;
+                return false;
+            }
+            isNull = tag == TokenStreamWriter.NULL_TOKEN;
+            if (isNull) return true;
+            type = tag - TokenStreamWriter.FIRST_TYPE;
+            int zigzag = readVarint();
+            offset += (zigzag >>> 1) ^ -(zigzag & 1);
+            value = readString();
+            scope = readString();
+            traceSize = -1;
+            if (traces) {
+                traceSize = readVarint() - 1;
+                traceAt = in.position();
+                if (traceSize > 0) {
+                    readVarint();
+                    readVarint();
+                    for (int i = 0; i < traceSize; i++) readVarint();
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt token stream", e);
+        }
+    }
+
+    boolean isNull() { return isNull; }
+    int type() { return type; }
+    // -1 when the writer did not know where the token started.
+    int offset() { return offset; }
+    String value() { return string(value); }
+    String scope() { return string(scope); }
+    boolean hasTrace() { return traceSize >= 0; }
+    int traceSize() { return traceSize; }
+
+    StateTrace trace() {
+        if (traceSize < 0) return null;
+        if (traceSize == 0) return new StateTrace(0, new char[0], false, false);
+        int position = in.position();
+        try {
+            in.position(traceAt);
+            int first = readVarint();
+            int flags = readVarint();
+            char[] symbols = new char[traceSize];
+            for (int i = 0; i < traceSize; i++) symbols[i] = (char) readVarint();
+            return new StateTrace(first, symbols, (flags & TokenStreamWriter.FINAL) != 0,
+                (flags & TokenStreamWriter.LINKED) != 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            in.position(position);
+        }
+    }
+
+    // The current token as a Token, or null for a null token. The format keeps no
+    // FixedPoint values, so a numeric literal's is parsed again from its text.
+    Token token() {
+        if (isNull) return null;
+        String text = value();
+        Token token = new Token(type, text, trace(), scope(), offset);
+        if ((type == Token.INTEGER || type == Token.DECIMAL) && text != null) {
+            token.setFixed(Math.max(FixedPoint.parse(text, 0, text.length()), FixedPoint.OVERFLOW));
+        }
+        return token;
+    }
+
+    // The rest of the stream as tokens.
+    List<Token> readAll() throws IOException {
+        List<Token> tokens = new ArrayList<>();
+        while (next()) tokens.add(token());
+        return tokens;
+    }
+
+    // String references are 0 for null and otherwise index + 1 here.
+    private int readString() throws IOException {
+        int reference = readVarint();
+        if (reference == TokenStreamWriter.NULL_STRING) return 0;
+        if (reference == TokenStreamWriter.NEW_STRING) {
+            int length = readVarint();
+            if (strings == stringStart.length) {
+                stringStart = Arrays.copyOf(stringStart, strings * 2);
+                stringLength = Arrays.copyOf(stringLength, strings * 2);
+                decoded = Arrays.copyOf(decoded, strings * 2);
+            }
+            stringStart[strings] = in.position();
+            stringLength[strings] = length;
+            in.position(in.position() + length);
+            return ++strings;
+        }
+        int id = reference - TokenStreamWriter.FIRST_STRING;
+        if (id >= strings) throw new IOException("Corrupt string reference " + reference);
+        return id + 1;
+    }
+
+    private String string(int reference) {
+        if (reference == 0) return null;
+        int id = reference - 1;
+        String string = decoded[id];
+        if (string == null) {
+            byte[] bytes = new byte[stringLength[id]];
+            in.get(stringStart[id], bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            decoded[id] = string;
+        }
+        return string;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Corrupt varint");
+    }
+}
@@ -0,0 +1,164 @@
+package example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes tokens as they come in the binary token-stream format that TokenStreamReader
+// reads back, for tools and later stages that want tokens without lexing or parsing
+// the text report. Nothing is held but a small buffer and the string ids handed out.
+//
+// Layout, numbers as unsigned varints unless said otherwise:
+//   header:  magic (4 bytes, big-endian), format version, flags (1: state paths included)
+//   tokens:  per token a tag, 0 ending the stream, 1 for a null token, else type + 2; then
+//            the start offset as a zigzag delta from the previous token's (-1 when
+//            unknown), the value and the scope as string references, and with state
+//            paths included the path length + 1 (0 for none) and, for a path, its first
+//            state id, flags (1 final, 2 linked) and one char per state
+// A string reference is 0 for null, 1 for a new string given right there as length +
+// UTF-8 bytes and numbered in order of appearance, or its number + 2 once seen.
+final class TokenStreamWriter implements Closeable {
+    static final int MAGIC = 0x5341544b;
+    static final int VERSION = 1;
+    static final int TRACES = 1;
+
+    static final int END = 0;
+    static final int NULL_TOKEN = 1;
+    static final int FIRST_TYPE = 2;
+    static final int NULL_STRING = 0;
+    static final int NEW_STRING = 1;
+    static final int FIRST_STRING = 2;
+    static final int FINAL = 1;
+    static final int LINKED = 2;
+
+    private final OutputStream out;
+    private final boolean traces;
+    private final byte[] buffer = new byte[64 * 1024];
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int count;
+    private int previousOffset;
+    private long written;
+
+    // With traces, state paths are kept; without, tokens are written as if untraced.
+    TokenStreamWriter(OutputStream out, boolean traces) throws IOException {
+        this.out = out;
+        this.traces = traces;
+        for (int shift = 24; shift >= 0; shift -= 8) buffer[count++] = (byte) (MAGIC >>> shift);
+        varint(VERSION);
+        varint(traces ? TRACES : 0);
+    }
+
+    void write(Token token) throws IOException {
+        if (token == null) {
+            varint(NULL_TOKEN);
+        } else {
+            varint(token.getType() + FIRST_TYPE);
+            offset(token.getOffset());
+            string(token.getValue());
+            string(token.getScope());
+            if (traces) trace(token.getTrace());
+        }
+        written++;
+    }
+
+    // Writes straight from the buffer's columns, without making Token objects.
+    void write(TokenBuffer tokens) throws IOException {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.isNull(i)) {
+                varint(NULL_TOKEN);
+            } else {
+                varint(tokens.type(i) + FIRST_TYPE);
+                offset(tokens.start(i));
+                string(tokens.value(i));
+                string(tokens.scope(i));
+                if (traces) trace(tokens.hasTrace(i) ? tokens.trace(i) : null);
+            }
+            written++;
+        }
+    }
+
+    void writeAll(List<Token> tokens) throws IOException {
+        if (tokens instanceof TokenBuffer) {
+            write((TokenBuffer) tokens);
+            return;
+        }
+        for (Token token : tokens) write(token);
+    }
+
+    long written() {
+        return written;
+    }
+
+    // Ends the stream and closes the underlying one.
+    @Override
+    public void close() throws IOException {
+        try {
+            varint(END);
+            out.write(buffer, 0, count);
+            count = 0;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void offset(int offset) throws IOException {
+        int delta = offset - previousOffset;
+        varint((delta << 1) ^ (delta >> 31));
+        previousOffset = offset;
+    }
+
+    private void string(String string) throws IOException {
+        if (string == null) {
+            varint(NULL_STRING);
+            return;
+        }
+        Integer id = strings.get(string);
+        if (id != null) {
+            varint(id + FIRST_STRING);
+            return;
+        }
+        strings.put(string, strings.size());
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        varint(NEW_STRING);
+        varint(bytes.length);
+        if (bytes.length > buffer.length - count) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        if (bytes.length > buffer.length) {
+            out.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+    }
+
+    private void trace(StateTrace trace) throws IOException {
+        if (trace == null) {
+            varint(0);
+            return;
+        }
+        int size = trace.size();
+        varint(size + 1);
+        if (size == 0) return;
+        varint(trace.stateId(0));
+        varint((trace.isFinal(size - 1) ? FINAL : 0) | (trace.isLinked() ? LINKED : 0));
+        for (int i = 0; i < size; i++) varint(trace.symbol(i));
+    }
+
+    private void varint(int value) throws IOException {
+        if (buffer.length - count < 5) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        while ((value & ~0x7f) != 0) {
+            buffer[count++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+}
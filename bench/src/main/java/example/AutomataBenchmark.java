@@ -0,0 +1,63 @@
+package example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The automata section of the report: distinct token shapes, their NFAs and minimized
+// DFAs, written to a discarding sink. "cold" empties the automata cache before every
+// call, so each DFA is built again; "warm" measures the cached path.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AutomataBenchmark {
+    @Param({"64k", "1m"})
+    String size;
+
+    @Param({"warm", "cold"})
+    String cache;
+
+    // The enum's name, since JMH's generated code cannot see a package-private enum.
+    @Param({"TEXT", "DOT", "JSONL"})
+    String formatName;
+
+    private List<Token> tokens;
+    private ReportSink.Format format;
+
+    @Setup
+    public void setup() {
+        format = ReportSink.Format.valueOf(formatName);
+        tokens = new Lexer(Corpus.source(size), Lexer.Engine.TABLE, Lexer.Trace.COMPACT).tokenize();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if (cache.equals("cold")) AutomataVisualizer.clearCache();
+    }
+
+    @Benchmark
+    public void automata() throws IOException {
+        try (ReportSink sink = ReportSink.open(format, EnumSet.of(ReportSink.Section.NFA, ReportSink.Section.DFA),
+                OutputStream.nullOutputStream())) {
+            sink.automata(tokens);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package example;
+
+// The sources the benchmarks share: one generated file per size, with the generator's
+// default mix and a fixed seed so runs stay comparable.
+final class Corpus {
+    private static final long SEED = 20240601L;
+
+    private Corpus() {}
+
+    static String source(String size) {
+        return new CorpusGenerator().size(CorpusGenerator.parseSize(size)).seed(SEED).generate();
+    }
+}
@@ -0,0 +1,195 @@
+package example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Deterministic .sa sources for benchmarks: the same settings and seed always give the
+// same text. The output lexes cleanly with both engines: lowercase names, balanced
+// braces, closed strings and comments, well-formed character literals.
+//
+//   java -cp benchmarks.jar example.CorpusGenerator [--size 1m] [--seed 1]
+//       [--identifiers 0.6] [--comments 0.1] [--depth 4]
+//       [--literals int:4,dec:2,str:2,char:1,bool:1] [out.sa]
+final class CorpusGenerator {
+    private static final String[] TYPES = {"num", "dec", "char", "bool"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "^"};
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "sum", "count", "total", "item", "value", "index"};
+    private static final String[] LITERALS = {"int", "dec", "str", "char", "bool"};
+
+    private int size = 64 * 1024;
+    private long seed = 1;
+    // Chance that an operand is a name rather than a literal.
+    private double identifiers = 0.6;
+    // Chance that a line is a comment; a third of them are block comments.
+    private double comments = 0.1;
+    private int depth = 4;
+    private int[] literalWeights = {4, 2, 2, 1, 1};
+
+    CorpusGenerator size(int size) { this.size = size; return this; }
+    CorpusGenerator seed(long seed) { this.seed = seed; return this; }
+    CorpusGenerator identifiers(double ratio) { this.identifiers = ratio; return this; }
+    CorpusGenerator comments(double ratio) { this.comments = ratio; return this; }
+    CorpusGenerator depth(int depth) { this.depth = depth; return this; }
+
+    // Weights per literal kind, e.g. "int:4,dec:2,str:2,char:1,bool:1"; kinds left out get 0.
+    CorpusGenerator literals(String mix) {
+        int[] weights = new int[LITERALS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            int kind = indexOf(LITERALS, pair[0]);
+            if (kind < 0 || pair.length != 2) {
+                throw new IllegalArgumentException("Unknown literal weight: " + part);
+            }
+            weights[kind] = Integer.parseInt(pair[1]);
+        }
+        this.literalWeights = weights;
+        return this;
+    }
+
+    String generate() {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder(size + 256);
+        int names = 0;
+        int open = 0;
+        while (out.length() < size) {
+            indent(out, open);
+            double roll = random.nextDouble();
+            if (roll < comments) {
+                if (random.nextInt(3) == 0) {
+                    out.append("/* ").append(phrase(random)).append('\n');
+                    indent(out, open);
+                    out.append("   ").append(phrase(random)).append(" */\n");
+                } else {
+                    out.append("// ").append(phrase(random)).append('\n');
+                }
+            } else if (open < depth && random.nextInt(6) == 0) {
+                out.append(random.nextBoolean() ? "if (" : "loop (").append(operand(random, names)).append(") {\n");
+                open++;
+            } else if (open > 0 && random.nextInt(5) == 0) {
+                out.setLength(out.length() - 4);
+                out.append("}\n");
+                open--;
+            } else if (names == 0 || random.nextInt(4) == 0) {
+                out.append(TYPES[random.nextInt(TYPES.length)]).append(' ').append(name(names++))
+                    .append(" = ").append(literal(random)).append(";\n");
+            } else if (random.nextInt(8) == 0) {
+                out.append(random.nextBoolean() ? "output(" : "input(").append(name(random.nextInt(names))).append(");\n");
+            } else {
+                out.append(name(random.nextInt(names))).append(" = ").append(operand(random, names));
+                int terms = random.nextInt(4);
+                for (int i = 0; i < terms; i++) {
+                    out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ').append(operand(random, names));
+                }
+                out.append(";\n");
+            }
+        }
+        while (open-- > 0) {
+            indent(out, open);
+            out.append("}\n");
+        }
+        return out.toString();
+    }
+
+    private String operand(Random random, int names) {
+        if (names > 0 && random.nextDouble() < identifiers) {
+            return name(random.nextInt(names));
+        }
+        return literal(random);
+    }
+
+    private String literal(Random random) {
+        int total = 0;
+        for (int weight : literalWeights) total += weight;
+        if (total == 0) return String.valueOf(random.nextInt(1000));
+        int pick = random.nextInt(total);
+        int kind = 0;
+        while (pick >= literalWeights[kind]) pick -= literalWeights[kind++];
+        return switch (LITERALS[kind]) {
+            case "int" -> String.valueOf(random.nextInt(100_000));
+            case "dec" -> random.nextInt(1000) + "." + random.nextInt(100_000);
+            case "str" -> "\"" + phrase(random) + "\"";
+            case "char" -> "'" + (char) ('a' + random.nextInt(26)) + "'";
+            default -> random.nextBoolean() ? "true" : "false";
+        };
+    }
+
+    private static String phrase(Random random) {
+        StringBuilder phrase = new StringBuilder();
+        int words = 1 + random.nextInt(5);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) phrase.append(' ');
+            phrase.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return phrase.toString();
+    }
+
+    private static String name(int index) {
+        return WORDS[index % WORDS.length] + (index / WORDS.length);
+    }
+
+    private static void indent(StringBuilder out, int depth) {
+        for (int i = 0; i < depth; i++) out.append("    ");
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        return -1;
+    }
+
+    // Sizes may end in k or m.
+    static int parseSize(String size) {
+        String lower = size.toLowerCase();
+        if (lower.endsWith("k")) return Integer.parseInt(lower.substring(0, lower.length() - 1)) * 1024;
+        if (lower.endsWith("m")) return Integer.parseInt(lower.substring(0, lower.length() - 1)) * 1024 * 1024;
+        return Integer.parseInt(lower);
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: java -cp benchmarks.jar example.CorpusGenerator [--size 1m] [--seed 1]");
+        out.println("           [--identifiers 0.6] [--comments 0.1] [--depth 4]");
+        out.println("           [--literals int:4,dec:2,str:2,char:1,bool:1] [out.sa]");
+    }
+
+    public static void main(String[] args) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator();
+        String out = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--size") && i + 1 < args.length) {
+                generator.size(parseSize(args[++i]));
+            } else if (arg.equals("--seed") && i + 1 < args.length) {
+                generator.seed(Long.parseLong(args[++i]));
+            } else if (arg.equals("--identifiers") && i + 1 < args.length) {
+                generator.identifiers(Double.parseDouble(args[++i]));
+            } else if (arg.equals("--comments") && i + 1 < args.length) {
+                generator.comments(Double.parseDouble(args[++i]));
+            } else if (arg.equals("--depth") && i + 1 < args.length) {
+                generator.depth(Integer.parseInt(args[++i]));
+            } else if (arg.equals("--literals") && i + 1 < args.length) {
+                generator.literals(args[++i]);
+            } else if (arg.equals("-h") || arg.equals("--help")) {
+                usage(System.out);
+                return;
+            } else if (arg.startsWith("-") || out != null) {
+                // An unknown or incomplete flag would otherwise be taken for the output file.
+                System.err.println("Unexpected argument '" + arg + "'");
+                usage(System.err);
+                System.exit(2);
+            } else {
+                out = arg;
+            }
+        }
+        String source = generator.generate();
+        if (out == null) {
+            System.out.print(source);
+        } else {
+            Files.write(Path.of(out), source.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
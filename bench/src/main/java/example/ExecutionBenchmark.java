@@ -0,0 +1,100 @@
+package example;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Running a compiled program: the interpreter alone, the interpreter handing hot loops
+// to ProgramJit, and the JIT tier's code on its own and with its compilation. Output
+// goes to a Blackhole, so only execution is measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+    private static final String NUM_LOOP = String.join("\n",
+        "num i = 1000000",
+        "num sum = 0",
+        "loop (i)",
+        "  sum = sum + i * i % 7",
+        "  i = i - 1",
+        "end",
+        "write sum",
+        "");
+    private static final String DEC_LOOP = String.join("\n",
+        "num i = 1000000",
+        "dec balance = 100.0",
+        "loop (i)",
+        "  balance = balance * 1.00001 + 0.25 / 3",
+        "  if (i % 100000) { } else { write balance }",
+        "  i = i - 1",
+        "end",
+        "write balance",
+        "");
+
+    @Param({"num", "dec"})
+    String workload;
+
+    private Program program;
+    private ProgramJit.Compiled compiled;
+    private ProgramIo io;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        program = ProgramCompiler.compile(workload.equals("num") ? NUM_LOOP : DEC_LOOP);
+        compiled = ProgramJit.compile(program);
+        io = new BlackholeIo(blackhole);
+    }
+
+    @Benchmark
+    public void interpret() throws IOException {
+        new Interpreter(io, false).run(program);
+    }
+
+    @Benchmark
+    public void tiered() throws IOException {
+        new Interpreter(io, true).run(program);
+    }
+
+    @Benchmark
+    public void jit() throws IOException {
+        ProgramJit.run(program, compiled, io, new long[program.registers], 0);
+    }
+
+    @Benchmark
+    public void compileAndJit() throws IOException {
+        ProgramJit.run(program, io);
+    }
+
+    private static final class BlackholeIo implements ProgramIo {
+        private final Blackhole blackhole;
+
+        BlackholeIo(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override public void writeNum(long value) { blackhole.consume(value); }
+        @Override public void writeDec(long value) { blackhole.consume(value); }
+        @Override public void writeBool(long value) { blackhole.consume(value); }
+        @Override public void writeChar(long value) { blackhole.consume(value); }
+        @Override public void writeString(String value) { blackhole.consume(value); }
+        @Override public long readNum() { return 0; }
+        @Override public long readDec() { return 0; }
+        @Override public long readBool() { return 0; }
+        @Override public long readChar() { return 0; }
+    }
+}
@@ -0,0 +1,59 @@
+package example;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lexing alone, into a list and into a TokenBuffer.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({"64k", "1m"})
+    String size;
+
+    // Enum names as strings: the enums are package-private, which JMH's generated
+    // classes in example.jmh_generated cannot see.
+    @Param({"TABLE", "DISPATCH"})
+    String engineName;
+
+    @Param({"COMPACT", "NONE"})
+    String traceName;
+
+    private String source;
+    private Lexer.Engine engine;
+    private Lexer.Trace trace;
+
+    @Setup
+    public void setup() {
+        source = Corpus.source(size);
+        engine = Lexer.Engine.valueOf(engineName);
+        trace = Lexer.Trace.valueOf(traceName);
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        return new Lexer(source, engine, trace).tokenize();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizeBuffer() {
+        TokenBuffer tokens = new TokenBuffer();
+        new Lexer(source, engine, trace).tokenize(tokens);
+        return tokens;
+    }
+}
@@ -0,0 +1,53 @@
+package example;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing pulled straight from the lexer against lexing into a list first, and
+// parsing an already lexed list on its own.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"64k", "1m"})
+    String size;
+
+    private String source;
+    private List<Token> tokens;
+
+    @Setup
+    public void setup() {
+        source = Corpus.source(size);
+        tokens = new Lexer(source, Lexer.Engine.DISPATCH, Lexer.Trace.NONE).tokenize();
+    }
+
+    @Benchmark
+    public Ast pull() {
+        return new Parser(new Lexer(source, Lexer.Engine.DISPATCH, Lexer.Trace.NONE).tokens()).parse();
+    }
+
+    @Benchmark
+    public Ast lexThenParse() {
+        return new Parser(new Lexer(source, Lexer.Engine.DISPATCH, Lexer.Trace.NONE).tokenize().iterator()).parse();
+    }
+
+    @Benchmark
+    public Ast parseOnly() {
+        return new Parser(tokens.iterator()).parse();
+    }
+}
@@ -0,0 +1,55 @@
+package example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One whole compilation unit as main runs it, with the full report going to a
+// discarding sink.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"64k", "1m"})
+    String size;
+
+    // Enum names as strings, since JMH's generated code cannot see package-private enums.
+    @Param({"TABLE", "DISPATCH"})
+    String engineName;
+
+    @Param({"TEXT", "JSONL"})
+    String formatName;
+
+    private String source;
+    private Lexer.Engine engine;
+    private ReportSink.Format format;
+
+    @Setup
+    public void setup() {
+        source = Corpus.source(size);
+        engine = Lexer.Engine.valueOf(engineName);
+        format = ReportSink.Format.valueOf(formatName);
+    }
+
+    @Benchmark
+    public int compile() throws IOException {
+        try (ReportSink sink = ReportSink.open(format, ReportSink.ALL_SECTIONS, OutputStream.nullOutputStream())) {
+            return main.compile(source, engine, Lexer.Trace.COMPACT, false, null, sink, new CompileStats("bench"), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package example;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SymbolTable.populateFromTokens over tokens lexed once up front.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymbolTableBenchmark {
+    @Param({"64k", "1m"})
+    String size;
+
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        String source = Corpus.source(size);
+        tokens = new Lexer(source, Lexer.Engine.TABLE, Lexer.Trace.NONE).tokenize();
+        buffer = new TokenBuffer();
+        new Lexer(source, Lexer.Engine.TABLE, Lexer.Trace.NONE).tokenize(buffer);
+    }
+
+    @Benchmark
+    public SymbolTable populate() {
+        SymbolTable table = new SymbolTable();
+        table.populateFromTokens(tokens);
+        return table;
+    }
+
+    @Benchmark
+    public SymbolTable populateBuffer() {
+        SymbolTable table = new SymbolTable();
+        table.populateFromTokens(buffer);
+        return table;
+    }
+}
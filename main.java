@@ -1,51 +1,528 @@
 package example;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class main {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java main <filename>.sa");
-            return;
+        for (String arg : args) {
+            if (arg.equals("--daemon")) {
+                CompilerDaemon.serve(args);
+                return;
+            }
+            if (arg.equals("--client")) {
+                System.exit(CompilerDaemon.client(args));
+            }
         }
-        
-        String filename = args[0];
-        if (!filename.endsWith(".sa")) {
-            System.out.println("Error: File must have a .sa extension");
-            return;
+        int status = run(args, Path.of(""), System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    // One command line's worth of work, reporting to out and err. Relative paths are
+    // taken from cwd. Returns the exit status.
+    static int run(String[] args, Path cwd, PrintStream out, PrintStream err) {
+        Lexer.Engine engine = Lexer.Engine.DISPATCH;
+        Lexer.Trace trace = Lexer.Trace.COMPACT;
+        boolean stream = false;
+        boolean mmap = false;
+        boolean parallel = false;
+        TokenBuffer.Storage buffer = null;
+        boolean batch = false;
+        boolean stats = false;
+        boolean recover = false;
+        boolean ast = false;
+        boolean execute = false;
+        boolean bytecode = false;
+        String tier = "auto";
+        int jobs = BatchCompiler.DEFAULT_JOBS;
+        Path outDir = null;
+        Path automataCache = null;
+        Path lexCache = null;
+        Path emitTokens = null;
+        ReportSink.Format format = ReportSink.Format.TEXT;
+        Set<ReportSink.Section> sections = ReportSink.ALL_SECTIONS;
+        List<String> inputs = new ArrayList<>();
+        String badArgument = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--table")) {
+                engine = Lexer.Engine.TABLE;
+            } else if (arg.equals("--no-trace")) {
+                trace = Lexer.Trace.NONE;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--mmap")) {
+                mmap = true;
+            } else if (arg.equals("--parallel")) {
+                parallel = true;
+            } else if (arg.equals("--buffer")) {
+                buffer = TokenBuffer.Storage.HEAP;
+            } else if (arg.equals("--off-heap")) {
+                buffer = TokenBuffer.Storage.OFF_HEAP;
+            } else if (arg.equals("--automata-cache") && i + 1 < args.length) {
+                automataCache = cwd.resolve(args[++i]);
+            } else if (arg.equals("--build-cache") && i + 1 < args.length) {
+                lexCache = cwd.resolve(args[++i]);
+            } else if (arg.equals("--emit-tokens") && i + 1 < args.length) {
+                emitTokens = cwd.resolve(args[++i]);
+            } else if (arg.equals("--format") && i + 1 < args.length) {
+                format = format(args[++i]);
+                if (format == null) badArgument = "--format " + args[i];
+            } else if (arg.equals("--sections") && i + 1 < args.length) {
+                sections = sections(args[++i]);
+                if (sections == null) badArgument = "--sections " + args[i];
+            } else if (arg.equals("--ast")) {
+                ast = true;
+            } else if (arg.equals("--run")) {
+                execute = true;
+            } else if (arg.equals("--jit")) {
+                tier = "jit";
+            } else if (arg.equals("--no-jit")) {
+                tier = "interpret";
+            } else if (arg.equals("--bytecode")) {
+                bytecode = true;
+            } else if (arg.equals("--recover")) {
+                recover = true;
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--jobs") && i + 1 < args.length) {
+                batch = true;
+                jobs = positive(args[++i]);
+                if (jobs <= 0) badArgument = "--jobs " + args[i];
+            } else if (arg.equals("--out") && i + 1 < args.length) {
+                batch = true;
+                outDir = cwd.resolve(args[++i]);
+            } else {
+                inputs.add(arg);
+            }
+        }
+        if (batch && emitTokens != null) {
+            badArgument = "--emit-tokens (a batch has no single token stream)";
+        }
+        if (badArgument != null || inputs.isEmpty() || (!batch && inputs.size() > 1)) {
+            if (badArgument != null) err.println("Invalid argument: " + badArgument);
+            out.println("Usage: java main [--table] [--no-trace] [--stream] [--mmap] [--parallel] [--buffer|--off-heap]");
+            out.println("                 [--automata-cache dir] [--build-cache dir] [--format text|dot|jsonl]");
+            out.println("                 [--recover] [--sections source,tokens,nfa,dfa,symbols,ast] [--ast] [--stats]");
+            out.println("                 [--emit-tokens file.sat] <filename>.sa|<filename>.sat");
+            out.println("       java main [--table] [--bytecode] [--run [--jit|--no-jit]] <filename>.sa");
+            out.println("       java main --batch [--jobs n] [--out dir] [options] <file|dir|glob|@list>...");
+            out.println("       java main --daemon [--socket path] [--watch dir]... [options]");
+            out.println("       java main --client [--socket path] [options] <filename>.sa");
+            return badArgument != null ? 2 : 0;
+        }
+
+        if (ast) {
+            sections = EnumSet.copyOf(sections);
+            sections.add(ReportSink.Section.AST);
+        }
+
+        AutomataCache automata = null;
+        if (automataCache != null) {
+            try {
+                automata = new AutomataCache(automataCache, AutomataCache.DEFAULT_MAX_BYTES);
+            } catch (IOException e) {
+                err.println("Automata cache disabled: " + e.getMessage());
+            }
+        }
+        BuildCache buildCache = null;
+        if (lexCache != null) {
+            try {
+                buildCache = new BuildCache(lexCache, BuildCache.DEFAULT_MAX_BYTES);
+            } catch (IOException e) {
+                err.println("Build cache disabled: " + e.getMessage());
+            }
+        }
+
+        if (batch) {
+            BatchCompiler compiler = new BatchCompiler(engine, trace, jobs, outDir, format, sections, stats, recover,
+                stream, mmap, parallel, buffer, automata, buildCache);
+            return compiler.run(inputs, cwd, out, err) == 0 ? 0 : 1;
+        }
+
+        String filename = inputs.get(0);
+        Path file = cwd.resolve(filename);
+
+        if (!filename.endsWith(".sa") && !filename.endsWith(".sat")) {
+            out.println("Error: File must have a .sa extension");
+            return 0;
+        }
+
+        if (execute || bytecode) {
+            return execute(file, engine, bytecode, execute ? tier : null, out, err);
+        }
+
+        TokenStreamWriter emit = null;
+        if (emitTokens != null) {
+            try {
+                emit = new TokenStreamWriter(Files.newOutputStream(emitTokens), trace != Lexer.Trace.NONE);
+            } catch (IOException e) {
+                out.println("Error writing tokens: " + e.getMessage());
+                return 0;
+            }
         }
         
+        CompileStats unitStats = new CompileStats(filename);
+        Diagnostics diagnostics = recover ? new Diagnostics() : null;
+        try (ReportSink sink = ReportSink.open(format, sections, out).diskCache(automata);
+             TokenStreamWriter tokens = emit) {
+            if (filename.endsWith(".sat")) {
+                replay(file, sink, unitStats, tokens);
+            } else if (stream) {
+                streamFile(file, trace, sink, unitStats, diagnostics, tokens);
+            } else {
+                unitStats.begin(CompileStats.Phase.READ);
+                CharSequence sourceCode = mmap ? MappedSource.open(file) : readFile(file.toString());
+                unitStats.bytes = Files.size(file);
+                unitStats.end();
+                compile(sourceCode, engine, trace, parallel, buffer, sink, unitStats, diagnostics, buildCache, tokens);
+            }
+        } catch (IOException e) {
+            out.println("Error reading file: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            out.println("Error reading file: " + e.getCause().getMessage());
+        }
+        if (stats) {
+            unitStats.print(err);
+        }
+        if (diagnostics != null && !diagnostics.isEmpty()) {
+            diagnostics.print(filename, err);
+            return 1;
+        }
+        return 0;
+    }
+
+    // --bytecode and --run: compiles the program, then prints its bytecode and/or runs
+    // it against stdin and out. tier is "auto" to interpret with hot loops handed to
+    // ProgramJit, "jit" to compile it all first, "interpret" to only interpret, and null
+    // to not run. Errors in the program go to err with status 1.
+    static int execute(Path file, Lexer.Engine engine, boolean listing, String tier, PrintStream out, PrintStream err) {
         try {
-            
-            String sourceCode = readFile(filename);
-            System.out.println("Source Code:");
-            System.out.println("─".repeat(40));
-            System.out.println(sourceCode);
-            
-            Lexer lexer = new Lexer(sourceCode);
-            List<Token> tokens = lexer.tokenize();
+            String sourceCode = readFile(file.toString());
+            Lexer lexer = new Lexer(sourceCode, engine, Lexer.Trace.NONE);
+            Program program = ProgramCompiler.compile(new Parser(lexer.tokens()).parse(), lexer.lines());
+            if (listing) {
+                out.print(program.disassemble());
+            }
+            if (tier != null) {
+                ProgramIo io = ProgramIo.console(new BufferedReader(new InputStreamReader(System.in)), out);
+                if (tier.equals("jit")) {
+                    ProgramJit.run(program, io);
+                } else {
+                    new Interpreter(io, tier.equals("auto")).run(program);
+                }
+                out.flush();
+            }
+            return 0;
+        } catch (IOException e) {
+            out.println("Error reading file: " + e.getMessage());
+            return 0;
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            out.flush();
+            err.println(e.getMessage());
+            return 1;
+        }
+    }
 
-            System.out.println("\nTokens:");
-            System.out.println("─".repeat(40));
-            for (Token token : tokens) {
-                System.out.println(token);
+    // Runs one compilation unit and writes its report to sink. Returns the number of
+    // tokens. With a buffer storage the tokens are kept in a TokenBuffer rather than a list.
+    // Each phase is timed and counted in stats. Given diagnostics, lexing recovers from
+    // errors and reports them there; it then always runs sequentially. Given a build cache,
+    // a unit lexed before gets its tokens, symbols and diagnostics from there instead.
+    // Given emit, the tokens are also written there as a binary token stream.
+    static int compile(CharSequence sourceCode, Lexer.Engine engine, Lexer.Trace trace, boolean parallel,
+                       TokenBuffer.Storage buffer, ReportSink sink, CompileStats stats,
+                       Diagnostics diagnostics, BuildCache cache, TokenStreamWriter emit) {
+        CompileStats.Scope scope = stats.install();
+        try {
+            stats.begin(CompileStats.Phase.REPORT);
+            sink.source(sourceCode);
+
+            parallel &= diagnostics == null;
+            byte[] key = null;
+            BuildCache.Unit cached = null;
+            if (cache != null) {
+                stats.begin(CompileStats.Phase.LEX);
+                key = BuildCache.key(sourceCode, trace, diagnostics != null);
+                cached = cache.load(key);
+                stats.restored = cached != null;
+            }
+            if (cached != null && diagnostics != null) {
+                for (Diagnostic diagnostic : cached.diagnostics) diagnostics.add(diagnostic);
+            }
+
+            SymbolTable symbolTable = cached == null ? null : restore(cached.symbols);
+            if (buffer != null && !parallel) {
+                stats.begin(CompileStats.Phase.LEX);
+                TokenBuffer tokens;
+                if (cached != null) {
+                    tokens = new TokenBuffer(buffer);
+                    tokens.addAll(cached.tokens);
+                } else {
+                    tokens = bufferTokens(sourceCode, engine, trace, buffer, diagnostics);
+                }
+                stats.tokens(tokens);
+                emit(emit, tokens);
+                symbolTable = report(tokens, sourceCode, trace, sink, stats, symbolTable);
+                if (cached == null && cache != null) {
+                    cache.store(key, tokens, symbolTable.entries(), diagnosticList(diagnostics));
+                }
+                return tokens.size();
+            }
+            stats.begin(CompileStats.Phase.LEX);
+            List<Token> tokens;
+            if (cached != null) {
+                tokens = cached.tokens;
+            } else {
+                tokens = parallel
+                    ? ParallelLexer.tokenize(sourceCode, trace)
+                    : new Lexer(sourceCode, engine, trace).recover(diagnostics).tokenize();
             }
+            stats.tokens(tokens);
+            emit(emit, tokens);
 
-            AutomataVisualizer.displayAllAutomata(tokens);
+            stats.begin(CompileStats.Phase.REPORT);
+            sink.tokens(tokens);
 
+            if (trace != Lexer.Trace.NONE) {
+                stats.begin(CompileStats.Phase.AUTOMATA);
+                sink.automata(tokens);
+            }
+
+            stats.begin(CompileStats.Phase.SYMBOLS);
+            if (symbolTable == null) {
+                symbolTable = new SymbolTable();
+                symbolTable.populateFromTokens(tokens);
+            }
+            stats.symbols = symbolTable.size();
+            sink.symbols(symbolTable);
+            syntax(tokens, sourceCode, sink, stats);
+            stats.end();
+            if (cached == null && cache != null) {
+                cache.store(key, tokens, symbolTable.entries(), diagnosticList(diagnostics));
+            }
+            return tokens.size();
+        } finally {
+            scope.close();
+        }
+    }
+
+    private static void emit(TokenStreamWriter emit, List<Token> tokens) {
+        if (emit == null) return;
+        try {
+            emit.writeAll(tokens);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reports a token stream that --emit-tokens wrote, as a compile of its source would
+    // minus the source itself, without lexing anything.
+    private static void replay(Path file, ReportSink sink, CompileStats stats, TokenStreamWriter emit)
+            throws IOException {
+        CompileStats.Scope scope = stats.install();
+        try {
+            stats.begin(CompileStats.Phase.READ);
+            stats.bytes = Files.size(file);
+            TokenStreamReader reader = TokenStreamReader.open(file);
+            List<Token> tokens = reader.readAll();
+            stats.tokens(tokens);
+            emit(emit, tokens);
+
+            stats.begin(CompileStats.Phase.REPORT);
+            sink.tokens(tokens);
+
+            if (reader.hasTraces()) {
+                stats.begin(CompileStats.Phase.AUTOMATA);
+                sink.automata(tokens);
+            }
+
+            stats.begin(CompileStats.Phase.SYMBOLS);
             SymbolTable symbolTable = new SymbolTable();
             symbolTable.populateFromTokens(tokens);
-            symbolTable.printTable();
-            
-        } catch (IOException e) {
-            System.out.println("Error reading file: " + e.getMessage());
+            stats.symbols = symbolTable.size();
+            sink.symbols(symbolTable);
+            syntax(tokens, null, sink, stats);
+            stats.end();
+        } finally {
+            scope.close();
+        }
+    }
+
+    // Parses the tokens and reports the tree, if the sink shows it. Syntax errors are
+    // placed by line in source, which is null for a token stream without its source.
+    private static void syntax(List<Token> tokens, CharSequence source, ReportSink sink, CompileStats stats) {
+        if (!sink.shows(ReportSink.Section.AST)) return;
+        stats.begin(CompileStats.Phase.PARSE);
+        Ast ast = new Parser(tokens.iterator()).parse();
+        ast(ast, ast.errors() > 0 && source != null ? LineIndex.of(source) : null, sink, stats);
+    }
+
+    private static void ast(Ast ast, LineIndex lines, ReportSink sink, CompileStats stats) {
+        stats.nodes = ast.size();
+        stats.syntaxErrors = ast.errors();
+        stats.begin(CompileStats.Phase.REPORT);
+        sink.ast(ast, lines);
+    }
+
+    private static SymbolTable restore(List<SymbolTableEntry> entries) {
+        SymbolTable symbolTable = new SymbolTable();
+        for (SymbolTableEntry entry : entries) symbolTable.restore(entry);
+        return symbolTable;
+    }
+
+    private static List<Diagnostic> diagnosticList(Diagnostics diagnostics) {
+        return diagnostics == null ? List.of() : diagnostics.list();
+    }
+
+    private static TokenBuffer bufferTokens(CharSequence sourceCode, Lexer.Engine engine, Lexer.Trace trace,
+                                            TokenBuffer.Storage storage, Diagnostics diagnostics) {
+        TokenBuffer tokens = new TokenBuffer(storage);
+        new Lexer(sourceCode, engine, trace).recover(diagnostics).tokenize(tokens);
+        return tokens;
+    }
+
+    // Reports the tokens and their symbols, which are collected from the tokens unless
+    // restored ones are given. Returns the symbol table.
+    private static SymbolTable report(TokenBuffer tokens, CharSequence source, Lexer.Trace trace, ReportSink sink,
+                                      CompileStats stats, SymbolTable symbolTable) {
+        stats.begin(CompileStats.Phase.REPORT);
+        sink.tokens(tokens);
+
+        if (trace != Lexer.Trace.NONE) {
+            stats.begin(CompileStats.Phase.AUTOMATA);
+            sink.automata(tokens);
+        }
+
+        stats.begin(CompileStats.Phase.SYMBOLS);
+        if (symbolTable == null) {
+            symbolTable = new SymbolTable();
+            symbolTable.populateFromTokens(tokens);
+        }
+        stats.symbols = symbolTable.size();
+        sink.symbols(symbolTable);
+        syntax(tokens, source, sink, stats);
+        stats.end();
+        return symbolTable;
+    }
+
+    // Lexes through a bounded buffer and handles each token as soon as it is produced,
+    // so neither the source nor the token list is ever held in full. Reading, lexing,
+    // parsing and the token report are interleaved, so stats count them all as the lex
+    // phase.
+    static void streamFile(Path file, Lexer.Trace trace, ReportSink sink,
+                           CompileStats stats, Diagnostics diagnostics, TokenStreamWriter emit)
+            throws IOException {
+        CompileStats.Scope scope = stats.install();
+        try (Reader reader = new FileReader(file.toFile())) {
+            stats.bytes = Files.size(file);
+            stats.begin(CompileStats.Phase.LEX);
+            Lexer lexer = new Lexer(reader, STREAM_BUFFER_SIZE, trace).recover(diagnostics);
+            SymbolTable symbolTable = new SymbolTable();
+
+            sink.beginTokens();
+            Iterator<Token> lexed = lexer.tokens();
+            // Every token is handled as it is pulled, by the parser or else the loop below.
+            Iterator<Token> tokens = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return lexed.hasNext();
+                }
+
+                @Override
+                public Token next() {
+                    Token token = lexed.next();
+                    stats.token(token);
+                    sink.token(token);
+                    if (emit != null) {
+                        try {
+                            emit.write(token);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    symbolTable.addToken(token);
+                    return token;
+                }
+            };
+            Ast ast = sink.shows(ReportSink.Section.AST) ? new Parser(tokens).parse() : null;
+            while (tokens.hasNext()) {
+                tokens.next();
+            }
+
+            stats.begin(CompileStats.Phase.SYMBOLS);
+            stats.symbols = symbolTable.size();
+            sink.symbols(symbolTable);
+            if (ast != null) {
+                // The text is gone by now, so a tree with errors has the file read once more
+                // for its lines.
+                LineIndex lines = null;
+                if (ast.errors() > 0) {
+                    try (Reader again = new FileReader(file.toFile())) {
+                        lines = LineIndex.read(again);
+                    }
+                }
+                ast(ast, lines, sink, stats);
+            }
+            stats.end();
+        } finally {
+            scope.close();
         }
     }
     
-    private static String readFile(String filename) throws IOException {
+    // A count given on the command line, or -1 if it is not a positive int.
+    private static int positive(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            return count > 0 ? count : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // A report format by name, or null if there is no such format.
+    private static ReportSink.Format format(String name) {
+        try {
+            return ReportSink.Format.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Comma-separated section names, e.g. "tokens,dfa", or null if one is no section.
+    private static Set<ReportSink.Section> sections(String names) {
+        Set<ReportSink.Section> sections = EnumSet.noneOf(ReportSink.Section.class);
+        for (String name : names.split(",")) {
+            if (name.isBlank()) continue;
+            try {
+                sections.add(ReportSink.Section.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return sections;
+    }
+
+    static String readFile(String filename) throws IOException {
         StringBuilder content = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
             String line;